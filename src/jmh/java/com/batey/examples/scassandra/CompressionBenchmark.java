@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ProtocolOptions;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+import org.scassandra.Scassandra;
+import org.scassandra.ScassandraFactory;
+import org.scassandra.http.client.PrimingRequest;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.scassandra.cql.ListType.list;
+import static org.scassandra.cql.PrimitiveType.INT;
+import static org.scassandra.cql.PrimitiveType.TIMESTAMP;
+import static org.scassandra.cql.PrimitiveType.VARCHAR;
+import static org.scassandra.http.client.types.ColumnMetadata.column;
+
+/**
+ * Throughput of a single-row by-name lookup and of a large full scan through {@link PersonDaoCassandra} with each
+ * frame compression option, against a Scassandra stub. Alongside throughput, the CPU time the JVM spent per
+ * operation, summed over all threads, is printed at the end of each trial; the stub runs in the same JVM, so this
+ * includes its side of the compression work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int SCAN_ROWS = 5000;
+
+    @Param({"NONE", "LZ4", "SNAPPY"})
+    public ProtocolOptions.Compression compression;
+
+    private Scassandra scassandra;
+    private PersonDaoCassandra dao;
+    private long operations;
+    private long cpuNanos;
+
+    @Setup
+    public void start() {
+        scassandra = ScassandraFactory.createServer();
+        scassandra.start();
+        scassandra.primingClient().prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery(PersonQuery.RETRIEVE_BY_NAME.cql())
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(ImmutableMap.of(
+                        "name", "Chris Batey",
+                        "age", 29,
+                        "interesting_dates", Arrays.asList(1420070400000L, 1422748800000L)))
+                .build());
+        List<Map<String, ? extends Object>> rows = new ArrayList<>();
+        for (int i = 0; i < SCAN_ROWS; i++) {
+            rows.add(ImmutableMap.<String, Object>of("name", "person-" + i, "age", i % 100));
+        }
+        scassandra.primingClient().prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery(PersonQuery.RETRIEVE_ALL.cql())
+                .withColumnTypes(column("age", INT))
+                .withRows(rows)
+                .build());
+
+        dao = new PersonDaoCassandra(8042, 1);
+        dao.setCompression(compression);
+        dao.connect();
+    }
+
+    @TearDown
+    public void stop() {
+        dao.disconnect();
+        scassandra.stop();
+        if (operations > 0) {
+            System.out.printf("%n%s: %.1f us CPU per operation%n", compression, cpuNanos / 1000.0 / operations);
+        }
+    }
+
+    @Benchmark
+    public List<Person> pointRead() {
+        long cpuBefore = processCpuTime();
+        List<Person> people = dao.retrievePeopleByName("Chris Batey");
+        recordCpu(cpuBefore);
+        return people;
+    }
+
+    @Benchmark
+    public List<Person> scan() {
+        long cpuBefore = processCpuTime();
+        List<Person> people = dao.retrievePeople();
+        recordCpu(cpuBefore);
+        return people;
+    }
+
+    private void recordCpu(long cpuBefore) {
+        cpuNanos += processCpuTime() - cpuBefore;
+        operations++;
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.scassandra.Scassandra;
+import org.scassandra.ScassandraFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of issuing the full scan as a fresh SimpleStatement versus binding the prepared statement.
+ * Run with {@code -prof gc} to compare allocation per call as well as latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FullScanStatementBenchmark {
+
+    private Scassandra scassandra;
+    private Cluster cluster;
+    private Session session;
+    private PreparedStatement prepared;
+
+    @Setup
+    public void start() {
+        scassandra = ScassandraFactory.createServer();
+        scassandra.start();
+        cluster = Cluster.builder().addContactPoint("localhost").withPort(8042).build();
+        session = cluster.connect("people");
+        prepared = session.prepare(PersonQuery.RETRIEVE_ALL.cql());
+    }
+
+    @TearDown
+    public void stop() {
+        cluster.close();
+        scassandra.stop();
+    }
+
+    @Benchmark
+    public ResultSet simpleStatement() {
+        Statement statement = new SimpleStatement(PersonQuery.RETRIEVE_ALL.cql());
+        statement.setConsistencyLevel(ConsistencyLevel.QUORUM);
+        return session.execute(statement);
+    }
+
+    @Benchmark
+    public ResultSet preparedStatement() {
+        Statement statement = prepared.bind();
+        statement.setConsistencyLevel(ConsistencyLevel.QUORUM);
+        return session.execute(statement);
+    }
+}
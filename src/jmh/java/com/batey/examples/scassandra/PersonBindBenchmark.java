@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.scassandra.Scassandra;
+import org.scassandra.ScassandraFactory;
+import org.scassandra.http.client.PrimingRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.scassandra.cql.ListType.list;
+import static org.scassandra.cql.PrimitiveType.INT;
+import static org.scassandra.cql.PrimitiveType.TIMESTAMP;
+import static org.scassandra.cql.PrimitiveType.VARCHAR;
+
+/**
+ * Cost of binding (and so serializing) the insert for one Person: the driver's codec over the List&lt;Date&gt;
+ * view versus {@link TimestampListCodec} writing the primitive dates into one buffer, as storePerson() does.
+ * Only the prepare goes to the Scassandra stub; run with {@code -prof gc} to compare allocation per bind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PersonBindBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int dates;
+
+    private Scassandra scassandra;
+    private Cluster cluster;
+    private PreparedStatement insert;
+    private ProtocolVersion protocolVersion;
+    private Person person;
+
+    @Setup
+    public void start() {
+        scassandra = ScassandraFactory.createServer();
+        scassandra.start();
+        scassandra.primingClient().prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery(PersonQuery.STORE.cql())
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        cluster = Cluster.builder().addContactPoint("localhost").withPort(8042).build();
+        insert = cluster.connect("people").prepare(PersonQuery.STORE.cql());
+        protocolVersion = cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum();
+
+        long[] millis = new long[dates];
+        for (int i = 0; i < dates; i++) {
+            millis[i] = 1420070400000L + i * 86400000L;
+        }
+        person = Person.ofMillis("Chris Batey", 29, millis);
+    }
+
+    @TearDown
+    public void stop() {
+        cluster.close();
+        scassandra.stop();
+    }
+
+    @Benchmark
+    public BoundStatement driverCodec() {
+        return insert.bind(person.getName(), person.getAge(), person.getInterestingDates());
+    }
+
+    @Benchmark
+    public BoundStatement timestampListCodec() {
+        BoundStatement bound = insert.bind();
+        bound.setString(0, person.getName());
+        bound.setInt(1, person.getAge());
+        bound.setBytesUnsafe(2, TimestampListCodec.encode(person.interestingDateMillis(), protocolVersion));
+        return bound;
+    }
+}
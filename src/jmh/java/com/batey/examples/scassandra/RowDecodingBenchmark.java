@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.*;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.scassandra.Scassandra;
+import org.scassandra.ScassandraFactory;
+import org.scassandra.http.client.PrimingRequest;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.scassandra.cql.ListType.list;
+import static org.scassandra.cql.PrimitiveType.INT;
+import static org.scassandra.cql.PrimitiveType.TIMESTAMP;
+import static org.scassandra.http.client.types.ColumnMetadata.column;
+
+/**
+ * Cost of decoding a large by-name result set with per-row column name lookups and boxed dates versus
+ * {@link PersonRowMapper}. The rows are fetched once from a Scassandra stub, so only decoding is measured; run with
+ * {@code -prof gc} to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RowDecodingBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private Scassandra scassandra;
+    private Cluster cluster;
+    private List<Row> rows;
+    private PersonRowMapper mapper;
+
+    @Setup
+    public void start() {
+        scassandra = ScassandraFactory.createServer();
+        scassandra.start();
+        List<Map<String, ? extends Object>> primedRows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            primedRows.add(ImmutableMap.<String, Object>of(
+                    "name", "person-" + i,
+                    "age", i % 100,
+                    "interesting_dates", Arrays.asList(1420070400000L, 1422748800000L)));
+        }
+        scassandra.primingClient().prime(PrimingRequest.queryBuilder()
+                .withQuery(PersonQuery.RETRIEVE_ALL.cql())
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(primedRows)
+                .build());
+
+        cluster = Cluster.builder().addContactPoint("localhost").withPort(8042).build();
+        rows = cluster.connect("people").execute(PersonQuery.RETRIEVE_ALL.cql()).all();
+        mapper = PersonRowMapper.full(cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum());
+    }
+
+    @TearDown
+    public void stop() {
+        cluster.close();
+        scassandra.stop();
+    }
+
+    @Benchmark
+    public void byColumnName(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(new Person(row.getString("name"), row.getInt("age"), row.getList("interesting_dates", Date.class)));
+        }
+    }
+
+    @Benchmark
+    public void byColumnIndex(Blackhole blackhole) {
+        for (Row row : rows) {
+            blackhole.consume(mapper.apply(row));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+import org.scassandra.Scassandra;
+import org.scassandra.ScassandraFactory;
+import org.scassandra.http.client.PrimingRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.scassandra.cql.ListType.list;
+import static org.scassandra.cql.PrimitiveType.INT;
+import static org.scassandra.cql.PrimitiveType.TIMESTAMP;
+import static org.scassandra.cql.PrimitiveType.VARCHAR;
+import static org.scassandra.http.client.types.ColumnMetadata.column;
+
+/**
+ * Throughput of by-name lookups through {@link PersonDaoCassandra} over Netty's NIO and native epoll transports,
+ * against a Scassandra stub, with enough client threads to keep several requests in flight per connection. Off
+ * Linux the epoll trial silently measures NIO; a note is printed when that happens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(16)
+@Fork(1)
+public class TransportBenchmark {
+
+    @Param({"false", "true"})
+    public boolean epoll;
+
+    @Param({"0", "4"})
+    public int callbackThreads;
+
+    private Scassandra scassandra;
+    private PersonDaoCassandra dao;
+
+    @Setup
+    public void start() {
+        scassandra = ScassandraFactory.createServer();
+        scassandra.start();
+        scassandra.primingClient().prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery(PersonQuery.RETRIEVE_BY_NAME.cql())
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(ImmutableMap.of(
+                        "name", "Chris Batey",
+                        "age", 29,
+                        "interesting_dates", Arrays.asList(1420070400000L, 1422748800000L)))
+                .build());
+
+        dao = new PersonDaoCassandra(8042, 1);
+        dao.setNativeTransport(epoll);
+        dao.setEventLoopThreads(2);
+        dao.setCallbackThreads(callbackThreads);
+        dao.connect();
+        if (epoll && !SharedNettyOptions.get(true, 2).isEpoll()) {
+            System.out.printf("%nepoll is not available here, this trial uses NIO%n");
+        }
+    }
+
+    @TearDown
+    public void stop() {
+        dao.disconnect();
+        scassandra.stop();
+    }
+
+    @Benchmark
+    public List<Person> pointRead() {
+        return dao.retrievePeopleByName("Chris Batey");
+    }
+
+    @Benchmark
+    public List<Person> asyncPointRead() {
+        return dao.async().retrievePeopleByName("Chris Batey").join();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the requests in flight to Cassandra and adapts the cap to how Cassandra is coping (AIMD):
+ * <ul>
+ * <li>while round trips stay close to the lowest recently seen round trip and the limit is actually being used,
+ * the limit grows by one per completed request;</li>
+ * <li>once round trips exceed that baseline by more than the tolerance, the limit is cut by 10%;</li>
+ * <li>a failed request (timeouts, no host available) halves it.</li>
+ * </ul>
+ * Decreases happen at most once per baseline round trip so one slow burst is not punished repeatedly. Requests
+ * beyond the limit are rejected immediately by {@link #tryAcquire()}; bulk callers that would rather queue than
+ * drop work wait for room with {@link #acquire(Deadline)}.
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private static final double CONGESTION_BACKOFF = 0.9;
+    private static final double FAILURE_BACKOFF = 0.5;
+    private static final int BASELINE_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private double limit;
+    private int inFlight;
+    private long rejected;
+    private long baselineRttNanos = Long.MAX_VALUE;
+    private long nextBaselineRttNanos = Long.MAX_VALUE;
+    private int baselineSamples;
+    private long lastDecreaseNanos;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Waits until the limit has room, or the deadline passes; a null deadline waits indefinitely.
+     *
+     * @return false, counted as a rejection, if the deadline passed first or the thread was interrupted.
+     */
+    synchronized boolean acquire(Deadline deadline) {
+        while (inFlight >= (int) limit) {
+            long remainingMillis = deadline == null ? 0 : deadline.remaining(TimeUnit.MILLISECONDS);
+            if (deadline != null && remainingMillis <= 0) {
+                rejected++;
+                return false;
+            }
+            try {
+                wait(remainingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected++;
+                return false;
+            }
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Returns the permit of a request that completed after {@code rttNanos}.
+     *
+     * @param failed whether the request failed, which is taken as a sign of overload.
+     */
+    synchronized void release(long rttNanos, boolean failed) {
+        boolean limitWasUsed = inFlight >= limit / 2;
+        inFlight--;
+        notifyAll();
+        long now = System.nanoTime();
+        if (failed) {
+            decrease(FAILURE_BACKOFF, now);
+            return;
+        }
+
+        updateBaseline(rttNanos);
+        if (rttNanos > baselineRttNanos * tolerance) {
+            decrease(CONGESTION_BACKOFF, now);
+        } else if (limitWasUsed) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * The baseline is the lowest round trip of the previous window of samples, so it follows Cassandra if its
+     * unloaded latency changes.
+     */
+    private void updateBaseline(long rttNanos) {
+        baselineRttNanos = Math.min(baselineRttNanos, rttNanos);
+        nextBaselineRttNanos = Math.min(nextBaselineRttNanos, rttNanos);
+        if (++baselineSamples == BASELINE_SAMPLES) {
+            baselineRttNanos = nextBaselineRttNanos;
+            nextBaselineRttNanos = Long.MAX_VALUE;
+            baselineSamples = 0;
+        }
+    }
+
+    private void decrease(double backoff, long now) {
+        long sinceLastDecrease = now - lastDecreaseNanos;
+        if (lastDecreaseNanos != 0 && baselineRttNanos != Long.MAX_VALUE && sinceLastDecrease < baselineRttNanos) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * backoff);
+        lastDecreaseNanos = now;
+    }
+}
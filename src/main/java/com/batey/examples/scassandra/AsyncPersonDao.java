@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link PersonDao}. Failures are delivered through the returned future using the
+ * same exceptions the blocking DAO throws.
+ */
+public interface AsyncPersonDao {
+    CompletableFuture<List<Person>> retrievePeople();
+
+    CompletableFuture<List<Person>> retrievePeopleByName(String firstName);
+
+    CompletableFuture<Void> storePerson(Person person);
+}
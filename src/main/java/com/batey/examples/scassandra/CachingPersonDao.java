@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache in front of {@link PersonDao#retrievePeopleByName(String)}.
+ * <p>
+ * Entries expire a fixed time after they were loaded and the cache never holds more than {@code maximumSize}
+ * names. When full, a newly loaded name only replaces the least recently used one if it has been asked for more
+ * often recently, so a burst of one-off lookups cannot flush the hot names. storePerson() through this instance
+ * replaces a cached name with the stored person, as a name holds a single person, and invalidates it if the store
+ * fails; writes made by anyone else are only seen once the entry expires.
+ * <p>
+ * Cached lists are shared between callers and therefore unmodifiable.
+ */
+public class CachingPersonDao implements PersonDao {
+
+    private final PersonDao delegate;
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier nanoTime;
+
+    private final LinkedHashMap<String, CachedPeople> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long invalidations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingPersonDao(PersonDao delegate, int maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this(delegate, maximumSize, expireAfterWrite, unit, System::nanoTime);
+    }
+
+    CachingPersonDao(PersonDao delegate, int maximumSize, long expireAfterWrite, TimeUnit unit, LongSupplier nanoTime) {
+        this.delegate = delegate;
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.nanoTime = nanoTime;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public void connect() {
+        delegate.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+        invalidateAll();
+    }
+
+    @Override
+    public List<Person> retrievePeople() {
+        return delegate.retrievePeople();
+    }
+
+    @Override
+    public List<Person> retrievePeople(Deadline deadline) {
+        return delegate.retrievePeople(deadline);
+    }
+
+    @Override
+    public Stream<Person> streamPeople(int fetchSize) {
+        return delegate.streamPeople(fetchSize);
+    }
+
+    @Override
+    public Stream<Person> streamPeopleWithDates(int fetchSize) {
+        return delegate.streamPeopleWithDates(fetchSize);
+    }
+
+    @Override
+    public List<Person> retrievePeopleByName(String firstName) {
+        return lookupOrLoad(firstName, () -> delegate.retrievePeopleByName(firstName));
+    }
+
+    /**
+     * A cached lookup is served whatever the deadline; only a miss passes the deadline on to the delegate.
+     */
+    @Override
+    public List<Person> retrievePeopleByName(String firstName, Deadline deadline) {
+        return lookupOrLoad(firstName, () -> delegate.retrievePeopleByName(firstName, deadline));
+    }
+
+    private List<Person> lookupOrLoad(String firstName, Supplier<List<Person>> load) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            List<Person> cached = lookup(firstName);
+            if (cached != null) {
+                return cached;
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+
+        List<Person> people = Collections.unmodifiableList(load.get());
+        synchronized (this) {
+            // a store that raced with the load may have made what was just read stale
+            if (invalidations == invalidationsBeforeLoad) {
+                admit(firstName, people);
+            }
+        }
+        return people;
+    }
+
+    /**
+     * Serves the cached names and asks the delegate for all the others in a single bulk lookup.
+     */
+    @Override
+    public Map<String, List<Person>> retrievePeopleByNames(Collection<String> firstNames) {
+        Map<String, List<Person>> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            for (String firstName : new LinkedHashSet<>(firstNames)) {
+                List<Person> cached = lookup(firstName);
+                if (cached != null) {
+                    found.put(firstName, cached);
+                } else {
+                    missing.add(firstName);
+                }
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, List<Person>> loaded = delegate.retrievePeopleByNames(missing);
+            synchronized (this) {
+                for (Map.Entry<String, List<Person>> entry : loaded.entrySet()) {
+                    List<Person> people = Collections.unmodifiableList(entry.getValue());
+                    if (invalidations == invalidationsBeforeLoad) {
+                        admit(entry.getKey(), people);
+                    }
+                    found.put(entry.getKey(), people);
+                }
+            }
+        }
+
+        Map<String, List<Person>> people = new LinkedHashMap<>();
+        for (String firstName : firstNames) {
+            if (found.containsKey(firstName)) {
+                people.put(firstName, found.get(firstName));
+            }
+        }
+        return people;
+    }
+
+    @Override
+    public void storePerson(Person person) {
+        try {
+            delegate.storePerson(person);
+        } catch (RuntimeException e) {
+            invalidate(person.getName());
+            throw e;
+        }
+        stored(person);
+    }
+
+    @Override
+    public void storePerson(Person person, Deadline deadline) {
+        try {
+            delegate.storePerson(person, deadline);
+        } catch (RuntimeException e) {
+            invalidate(person.getName());
+            throw e;
+        }
+        stored(person);
+    }
+
+    @Override
+    public List<StoreFailure> storePeople(Collection<Person> people) {
+        List<StoreFailure> failures;
+        try {
+            failures = delegate.storePeople(people);
+        } catch (RuntimeException e) {
+            for (Person person : people) {
+                invalidate(person.getName());
+            }
+            throw e;
+        }
+        Set<String> failedNames = new HashSet<>();
+        for (StoreFailure failure : failures) {
+            failedNames.add(failure.getPerson().getName());
+        }
+        for (Person person : people) {
+            if (failedNames.contains(person.getName())) {
+                invalidate(person.getName());
+            } else {
+                stored(person);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Replaces a cached entry with the person just stored rather than dropping it: a delegate that writes behind
+     * may not have written the person yet, and a lookup that missed would read the row from before the store.
+     */
+    private synchronized void stored(Person person) {
+        invalidations++;
+        if (cache.containsKey(person.getName())) {
+            cache.put(person.getName(), new CachedPeople(Collections.singletonList(person),
+                    nanoTime.getAsLong() + expireAfterWriteNanos));
+        }
+    }
+
+    public synchronized void invalidate(String name) {
+        invalidations++;
+        cache.remove(name);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        cache.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return entries dropped because they expired or lost their place to a more frequently requested name.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Caller must hold the lock.
+     *
+     * @return the cached people, or null on a miss.
+     */
+    private List<Person> lookup(String name) {
+        sketch.increment(name);
+        CachedPeople cached = cache.get(name);
+        if (cached != null) {
+            if (cached.expiresAt - nanoTime.getAsLong() > 0) {
+                hits.incrementAndGet();
+                return cached.people;
+            }
+            cache.remove(name);
+            evictions.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void admit(String name, List<Person> people) {
+        if (cache.size() >= maximumSize && !cache.containsKey(name)) {
+            Iterator<Map.Entry<String, CachedPeople>> eldest = cache.entrySet().iterator();
+            if (!eldest.hasNext()) {
+                return;
+            }
+            String victim = eldest.next().getKey();
+            if (sketch.frequency(name) <= sketch.frequency(victim)) {
+                return;
+            }
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+        cache.put(name, new CachedPeople(people, nanoTime.getAsLong() + expireAfterWriteNanos));
+    }
+
+    private static class CachedPeople {
+        private final List<Person> people;
+        private final long expiresAt;
+
+        private CachedPeople(List<Person> people, long expiresAt) {
+            this.people = people;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
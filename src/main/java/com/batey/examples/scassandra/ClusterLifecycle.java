@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+
+import java.util.function.Supplier;
+
+/**
+ * Owns the Cluster and Session behind a DAO so connecting is idempotent: connect() hands back the open session
+ * if there is one and only builds a new Cluster when there is none, or it has been closed. reconnect() replaces
+ * both, closing the old ones first.
+ */
+class ClusterLifecycle {
+
+    private final Supplier<Cluster> clusterFactory;
+    private final String keyspace;
+    private Cluster cluster;
+    private Session session;
+
+    ClusterLifecycle(Supplier<Cluster> clusterFactory, String keyspace) {
+        this.clusterFactory = clusterFactory;
+        this.keyspace = keyspace;
+    }
+
+    synchronized Session connect() {
+        if (session != null && !session.isClosed() && !cluster.isClosed()) {
+            return session;
+        }
+        close();
+        Cluster newCluster = clusterFactory.get();
+        try {
+            session = newCluster.connect(keyspace);
+        } catch (RuntimeException e) {
+            newCluster.close();
+            throw e;
+        }
+        cluster = newCluster;
+        return session;
+    }
+
+    synchronized Session reconnect() {
+        close();
+        return connect();
+    }
+
+    synchronized Cluster cluster() {
+        return cluster;
+    }
+
+    synchronized boolean isConnected() {
+        return session != null && !session.isClosed();
+    }
+
+    synchronized void close() {
+        if (cluster != null) {
+            cluster.close();
+        }
+        cluster = null;
+        session = null;
+    }
+}
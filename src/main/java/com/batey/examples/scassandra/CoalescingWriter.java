@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds each stored person for a short window before passing it on, so repeated saves of the same name within the
+ * window collapse into a single write of the latest one. The window opens with the first save of a name; later
+ * saves replace the pending person and are counted as suppressed. At most {@code capacity} names are pending at
+ * once; saving a further name blocks until one has been passed on.
+ * <p>
+ * Failures of the delegate are logged and counted; the producer has already been acknowledged.
+ */
+class CoalescingWriter implements PersonWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingWriter.class);
+
+    private final PersonWriter delegate;
+    private final long windowMillis;
+    private final int capacity;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Person> pending = new HashMap<>();
+    // held while people are taken from pending and passed on, so flush() waits for a release already under way
+    private final Object passingOn = new Object();
+    private volatile boolean running = true;
+
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    CoalescingWriter(PersonWriter delegate, long windowMillis, int capacity) {
+        this.delegate = delegate;
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("person-dao-coalescing");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(Person person) {
+        if (!running) {
+            throw new UnableToSavePersonException();
+        }
+        String name = person.getName();
+        boolean opensWindow;
+        synchronized (pending) {
+            while (pending.size() >= capacity && !pending.containsKey(name)) {
+                if (!running) {
+                    throw new UnableToSavePersonException();
+                }
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UnableToSavePersonException(e);
+                }
+            }
+            opensWindow = pending.put(name, person) == null;
+        }
+        if (!opensWindow) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        try {
+            scheduler.schedule(() -> release(name), windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime, nothing will come back for it
+            release(name);
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (passingOn) {
+            List<Person> people;
+            synchronized (pending) {
+                people = new ArrayList<>(pending.values());
+                pending.clear();
+                pending.notifyAll();
+            }
+            people.forEach(this::writeThrough);
+        }
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        flush();
+        delegate.close();
+    }
+
+    long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    long getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    private void release(String name) {
+        synchronized (passingOn) {
+            Person person;
+            synchronized (pending) {
+                person = pending.remove(name);
+                pending.notifyAll();
+            }
+            if (person != null) {
+                writeThrough(person);
+            }
+        }
+    }
+
+    private void writeThrough(Person person) {
+        try {
+            delegate.write(person);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            LOGGER.warn("Unable to write coalesced person {}", person.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by {@link ColumnarPersonWriter}, holding one block in memory at a time.
+ */
+public class ColumnarPersonReader implements Closeable {
+
+    private final FileChannel channel;
+    private ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+
+    private String[] names = new String[0];
+    private int[] nameIds = new int[0];
+    private int[] ages = new int[0];
+    private int[] dateCounts = new int[0];
+    private int rows;
+    private int row;
+    private long previousDate;
+    private boolean finished;
+
+    public ColumnarPersonReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = readFully(ByteBuffer.allocate(8));
+        if (header.getInt() != ColumnarPersonWriter.MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a columnar person file");
+        }
+        int version = header.getInt();
+        if (version != ColumnarPersonWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported columnar person file version " + version);
+        }
+    }
+
+    /**
+     * @return the next person, or null once the file is exhausted.
+     */
+    public Person read() throws IOException {
+        if (row == rows && !nextBlock()) {
+            return null;
+        }
+        long[] dates = new long[dateCounts[row]];
+        for (int i = 0; i < dates.length; i++) {
+            long zigzag = getVarint();
+            previousDate += (zigzag >>> 1) ^ -(zigzag & 1);
+            dates[i] = previousDate;
+        }
+        Person person = Person.ofMillis(names[nameIds[row]], ages[row], dates);
+        row++;
+        return person;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+        int length = readFully(ByteBuffer.allocate(4)).getInt();
+        if (length == 0) {
+            finished = true;
+            return false;
+        }
+        if (block.capacity() < length) {
+            block = ByteBuffer.allocate(length);
+        }
+        block.clear();
+        block.limit(length);
+        readFully(block);
+
+        rows = block.getInt();
+        int dictionarySize = (int) getVarint();
+        if (names.length < dictionarySize) {
+            names = new String[dictionarySize];
+        }
+        for (int i = 0; i < dictionarySize; i++) {
+            int nameLength = (int) getVarint();
+            names[i] = new String(block.array(), block.position(), nameLength, StandardCharsets.UTF_8);
+            block.position(block.position() + nameLength);
+        }
+        if (nameIds.length < rows) {
+            nameIds = new int[rows];
+            ages = new int[rows];
+            dateCounts = new int[rows];
+        }
+        for (int i = 0; i < rows; i++) {
+            nameIds[i] = (int) getVarint();
+        }
+        for (int i = 0; i < rows; i++) {
+            ages[i] = block.getInt();
+        }
+        for (int i = 0; i < rows; i++) {
+            dateCounts[i] = (int) getVarint();
+        }
+        // the dates column follows and is decoded row by row in read()
+        row = 0;
+        previousDate = 0;
+        return rows > 0 || nextBlock();
+    }
+
+    private long getVarint() {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = block.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private ByteBuffer readFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) {
+                throw new EOFException("Truncated columnar person file");
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+}
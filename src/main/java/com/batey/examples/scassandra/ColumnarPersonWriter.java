@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes people to a compact columnar file, buffering at most {@code rowsPerBlock} people at a time.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ * file  := "PCOL" version:int32 block* 0:int32
+ * block := length:int32 rows:int32
+ *          names:varint (nameLength:varint utf8)*   distinct names of the block
+ *          nameIds:varint[rows]                      index into the block's names
+ *          ages:int32[rows]
+ *          dateCounts:varint[rows]
+ *          dates:zigzag-varint[sum(dateCounts)]      each date as the delta from the previous one in the block
+ * </pre>
+ * Read it back with {@link ColumnarPersonReader}.
+ */
+public class ColumnarPersonWriter implements Closeable {
+
+    static final int MAGIC = 0x50434f4c;
+    static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final int rowsPerBlock;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final String[] names;
+    private final int[] nameIds;
+    private final int[] ages;
+    private final int[] dateCounts;
+    private long[] dates = new long[1024];
+    private int rows;
+    private int dateTotal;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    public ColumnarPersonWriter(Path file, int rowsPerBlock) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.rowsPerBlock = rowsPerBlock;
+        this.names = new String[rowsPerBlock];
+        this.nameIds = new int[rowsPerBlock];
+        this.ages = new int[rowsPerBlock];
+        this.dateCounts = new int[rowsPerBlock];
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(header);
+    }
+
+    public void write(Person person) throws IOException {
+        Integer id = dictionary.get(person.getName());
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(person.getName(), id);
+            names[id] = person.getName();
+        }
+        nameIds[rows] = id;
+        ages[rows] = person.getAge();
+
+        long[] millis = person.interestingDateMillis();
+        int count = millis == null ? 0 : millis.length;
+        if (dateTotal + count > dates.length) {
+            dates = Arrays.copyOf(dates, Math.max(dates.length * 2, dateTotal + count));
+        }
+        if (count > 0) {
+            System.arraycopy(millis, 0, dates, dateTotal, count);
+        }
+        dateCounts[rows] = count;
+        dateTotal += count;
+
+        if (++rows == rowsPerBlock) {
+            flushBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                flushBlock();
+            }
+            ByteBuffer end = ByteBuffer.allocate(4).putInt(0);
+            end.flip();
+            writeFully(end);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        buffer.clear();
+        buffer.putInt(0).putInt(rows);
+
+        putVarint(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) {
+            byte[] utf8 = names[i].getBytes(StandardCharsets.UTF_8);
+            putVarint(utf8.length);
+            ensure(utf8.length);
+            buffer.put(utf8);
+        }
+        for (int i = 0; i < rows; i++) {
+            putVarint(nameIds[i]);
+        }
+        ensure(rows * 4);
+        for (int i = 0; i < rows; i++) {
+            buffer.putInt(ages[i]);
+        }
+        for (int i = 0; i < rows; i++) {
+            putVarint(dateCounts[i]);
+        }
+        long previous = 0;
+        for (int i = 0; i < dateTotal; i++) {
+            long delta = dates[i] - previous;
+            putVarint((delta << 1) ^ (delta >> 63));
+            previous = dates[i];
+        }
+
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+        writeFully(buffer);
+
+        dictionary.clear();
+        Arrays.fill(names, null);
+        rows = 0;
+        dateTotal = 0;
+    }
+
+    private void putVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
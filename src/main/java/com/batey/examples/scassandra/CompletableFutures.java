@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Bridges the driver's Guava futures onto {@link CompletableFuture}.
+ */
+final class CompletableFutures {
+
+    /**
+     * Runs callbacks on the thread that completes the future, for the driver usually one of its I/O threads.
+     */
+    static final Executor SAME_THREAD = Runnable::run;
+
+    private CompletableFutures() {
+    }
+
+    static <T> CompletableFuture<T> from(ListenableFuture<T> future) {
+        return from(future, SAME_THREAD);
+    }
+
+    /**
+     * @param callbacks completes the returned future, and so runs the stages chained on it without an executor.
+     */
+    static <T> CompletableFuture<T> from(ListenableFuture<T> future, Executor callbacks) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, callbacks);
+        return result;
+    }
+
+    /**
+     * Replaces a failure of the given type with the exception produced by {@code translation}; other failures
+     * are passed through untouched.
+     */
+    static <T> CompletableFuture<T> translating(CompletableFuture<T> future, Class<? extends Throwable> failure,
+                                                Function<Throwable, ? extends RuntimeException> translation) {
+        CompletableFuture<T> translated = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                translated.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            translated.completeExceptionally(failure.isInstance(cause) ? translation.apply(cause) : cause);
+        });
+        return translated;
+    }
+
+    /**
+     * Waits for the future, rethrowing an unchecked failure as-is instead of wrapped in a CompletionException.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
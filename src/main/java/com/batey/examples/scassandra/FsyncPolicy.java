@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+/**
+ * When the local journal forces appended people to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * Before storePerson() returns; nothing acknowledged is lost, at the cost of a disk flush per write.
+     */
+    EVERY_WRITE,
+    /**
+     * In the background every journal sync interval; a crash loses at most that interval of writes.
+     */
+    INTERVAL,
+    /**
+     * Whenever the operating system writes the pages back; survives the process dying but not the machine.
+     */
+    NEVER
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Acknowledges stored people once they are in the local {@link PersonJournal} and replays the journal to Cassandra
+ * from a background thread, so storePerson() keeps its latency while Cassandra is briefly unreachable.
+ * <p>
+ * The replayer sends the journal in batches of concurrent inserts and only commits a batch once all of it has been
+ * written. While no host is up, or after a failed batch, it waits for the retry interval and tries the same batch
+ * again. Only attempts that reached a host count towards {@code maxReplayAttempts}; once a batch has used them up,
+ * the people still unwritten are logged to the {@code person-dao.dead-letter} logger and the batch is committed,
+ * so one person Cassandra keeps rejecting cannot stall the journal. Whatever is left when the writer is closed
+ * stays in the journal and is replayed on the next start.
+ * <p>
+ * Once the unreplayed backlog reaches {@code maxBacklogBytes}, storePerson() fails with
+ * UnableToSavePersonException instead of filling the disk.
+ * <p>
+ * Only the latest person journalled under each name in a batch is written, since concurrent inserts of one row may
+ * land in any order. With a coalescing window, the first save after the replayer has caught up holds the replay
+ * for that long, so repeated saves of a name within the window collapse into one write. People are coalesced only
+ * after they are in the journal, so coalescing never costs durability.
+ */
+class JournallingWriter implements PersonWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournallingWriter.class);
+    private static final Logger DEAD_LETTERS = LoggerFactory.getLogger("person-dao.dead-letter");
+
+    private final PersonJournal journal;
+    private final Session session;
+    private final Function<Person, Statement> insert;
+    private final int maxBatchSize;
+    private final long coalescingMillis;
+    private final long syncIntervalMillis;
+    private final long retryIntervalMillis;
+    private final int maxReplayAttempts;
+    private final long maxBacklogBytes;
+    private final Thread replayer;
+    private volatile boolean running = true;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failedReplays = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private PersonJournal.Position replayedTo;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * @param coalescingMillis how long the first save after a quiet spell waits for later saves to coalesce with;
+     *                         0 replays at once.
+     */
+    JournallingWriter(PersonJournal journal, Session session, Function<Person, Statement> insert, int maxBatchSize,
+                      long coalescingMillis, long syncIntervalMillis, long retryIntervalMillis, int maxReplayAttempts,
+                      long maxBacklogBytes) {
+        this.journal = journal;
+        this.session = session;
+        this.insert = insert;
+        this.maxBatchSize = maxBatchSize;
+        this.coalescingMillis = coalescingMillis;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.maxReplayAttempts = maxReplayAttempts;
+        this.maxBacklogBytes = maxBacklogBytes;
+        this.replayer = new Thread(this::run, "person-dao-journal-replay");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    @Override
+    public void write(Person person) {
+        if (!running) {
+            throw new UnableToSavePersonException();
+        }
+        if (journal.getBacklogBytes() >= maxBacklogBytes) {
+            throw new UnableToSavePersonException(new IOException("Journal backlog is over " + maxBacklogBytes + " bytes"));
+        }
+        journal.append(person);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until everything journalled before the call has been replayed, or a replay attempt has failed.
+     */
+    @Override
+    public void flush() {
+        PersonJournal.Position target = journal.end();
+        long failuresBefore = failedReplays.get();
+        synchronized (this) {
+            while ((replayedTo == null || replayedTo.compareTo(target) < 0)
+                    && failedReplays.get() == failuresBefore && replayer.isAlive()) {
+                try {
+                    wait(syncIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        replayer.interrupt();
+        try {
+            replayer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    long getBacklogBytes() {
+        return journal.getBacklogBytes();
+    }
+
+    long getReplayedCount() {
+        return replayed.get();
+    }
+
+    long getFailedReplayCount() {
+        return failedReplays.get();
+    }
+
+    /**
+     * @return people given up on after maxReplayAttempts and logged as dead letters.
+     */
+    long getDeadLetteredCount() {
+        return deadLettered.get();
+    }
+
+    /**
+     * @return journalled people not written because a later person with the same name was.
+     */
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private void run() {
+        boolean caughtUp = true;
+        int attempts = 0;
+        try {
+            while (running) {
+                syncIfDue();
+                PersonJournal.Batch batch = journal.read(maxBatchSize);
+                if (caughtUp && coalescingMillis > 0 && !batch.getPeople().isEmpty()) {
+                    pause(coalescingMillis);
+                    batch = journal.read(maxBatchSize);
+                }
+                List<Person> people = batch.getPeople();
+                caughtUp = people.isEmpty();
+                List<Person> unwritten = people.isEmpty() ? Collections.emptyList() : replay(people);
+                if (unwritten == null || !unwritten.isEmpty()) {
+                    failedReplays.incrementAndGet();
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    // an outage is what the journal is for, so only attempts that reached a host count
+                    if (unwritten == null || ++attempts < maxReplayAttempts) {
+                        pause(retryIntervalMillis);
+                        continue;
+                    }
+                    deadLetter(unwritten);
+                }
+                attempts = 0;
+                journal.commit(batch.getEnd());
+                replayed.addAndGet(people.size() - (unwritten == null ? 0 : unwritten.size()));
+                synchronized (this) {
+                    replayedTo = batch.getEnd();
+                    notifyAll();
+                    if (people.isEmpty()) {
+                        wait(syncIntervalMillis);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sleeps in steps of at most the sync interval, so appended people keep reaching the disk while Cassandra is
+     * down, which is when the journal matters most.
+     */
+    private void pause(long millis) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        for (long left = millis; left > 0 && running; left = TimeUnit.NANOSECONDS.toMillis(until - System.nanoTime())) {
+            Thread.sleep(Math.min(left, Math.max(1, syncIntervalMillis)));
+            syncIfDue();
+        }
+    }
+
+    private void syncIfDue() {
+        if (System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis)) {
+            journal.periodicSync();
+            lastSync = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the people whose writes failed, or null if no host was up to try them on.
+     */
+    private List<Person> replay(List<Person> people) {
+        if (session.getCluster().getMetadata().getAllHosts().stream().noneMatch(Host::isUp)) {
+            return null;
+        }
+        Map<String, Person> latest = new LinkedHashMap<>();
+        for (Person person : people) {
+            latest.put(person.getName(), person);
+        }
+        List<Person> unwritten = new ArrayList<>();
+        Map<Person, ResultSetFuture> writes = new LinkedHashMap<>();
+        for (Person person : latest.values()) {
+            try {
+                writes.put(person, session.executeAsync(insert.apply(person)));
+            } catch (RuntimeException e) {
+                // e.g. a codec rejecting the person, which no retry will change
+                LOGGER.warn("Unable to replay journalled person {}", person.getName(), e);
+                unwritten.add(person);
+            }
+        }
+        for (Map.Entry<Person, ResultSetFuture> write : writes.entrySet()) {
+            try {
+                write.getValue().getUninterruptibly();
+            } catch (RuntimeException e) {
+                if (unwritten.isEmpty()) {
+                    LOGGER.warn("Unable to replay journalled people, retrying in {}ms", retryIntervalMillis, e);
+                }
+                unwritten.add(write.getKey());
+            }
+        }
+        if (unwritten.isEmpty()) {
+            coalesced.addAndGet(people.size() - latest.size());
+        }
+        return unwritten;
+    }
+
+    private void deadLetter(List<Person> people) {
+        for (Person person : people) {
+            DEAD_LETTERS.error("{} {} {}", person.getName(), person.getAge(),
+                    Arrays.toString(person.getInterestingDateMillis()));
+        }
+        deadLettered.addAndGet(people.size());
+        LOGGER.error("Gave up on {} journalled people after {} attempts", people.size(), maxReplayAttempts);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+final class PagedResults {
+
+    private PagedResults() {
+    }
+
+    /**
+     * Maps the rows already fetched and only then asks for the next page, so no driver I/O thread ever blocks
+     * waiting for one. The fetched page is appended to the same result set; later pages are mapped on
+     * {@code callbacks}. No further page is requested once the deadline has passed; the result then fails with
+     * the exception from {@code failure}. Bounding a page fetch already under way is up to the caller.
+     */
+    static <T> CompletableFuture<List<T>> collect(ResultSet result, List<T> into, Function<Row, T> mapper,
+                                                  Executor callbacks, Deadline deadline,
+                                                  Supplier<? extends RuntimeException> failure) {
+        for (int remaining = result.getAvailableWithoutFetching(); remaining > 0; remaining--) {
+            into.add(mapper.apply(result.one()));
+        }
+        if (result.isFullyFetched()) {
+            return CompletableFuture.completedFuture(into);
+        }
+        if (deadline != null && deadline.isExpired()) {
+            CompletableFuture<List<T>> expired = new CompletableFuture<>();
+            expired.completeExceptionally(failure.get());
+            return expired;
+        }
+        return CompletableFutures.from(result.fetchMoreResults(), callbacks)
+                .thenCompose(ignored -> collect(result, into, mapper, callbacks, deadline, failure));
+    }
+}
@@ -1,17 +1,35 @@
 package com.batey.examples.scassandra;
 
+import java.util.AbstractList;
 import java.util.Date;
 import java.util.List;
+import java.util.RandomAccess;
 
 public class Person {
     private final String name;
     private final int age;
     private final List<Date> interestingDates;
+    // epoch millis, for people created by ofMillis; Date objects are only created if someone asks for them
+    private final long[] interestingDateMillis;
 
     public Person(String name, int age, List<Date> interestingDates) {
+        this(name, age, interestingDates, null);
+    }
+
+    private Person(String name, int age, List<Date> interestingDates, long[] interestingDateMillis) {
         this.name = name;
         this.age = age;
         this.interestingDates = interestingDates;
+        this.interestingDateMillis = interestingDateMillis;
+    }
+
+    /**
+     * @param interestingDateMillis interesting dates as epoch millis; the array is owned by the Person afterwards,
+     *                              and getInterestingDates() returns a read-only view of it.
+     */
+    public static Person ofMillis(String name, int age, long[] interestingDateMillis) {
+        return new Person(name, age, interestingDateMillis == null ? null : new DateView(interestingDateMillis),
+                interestingDateMillis);
     }
 
     public String getName() {
@@ -25,4 +43,46 @@ public class Person {
     public List<Date> getInterestingDates() {
         return interestingDates;
     }
+
+    public long[] getInterestingDateMillis() {
+        return interestingDateMillis != null ? interestingDateMillis.clone() : toMillis(interestingDates);
+    }
+
+    /**
+     * The dates as epoch millis for the codecs in this package, without a copy for people created by ofMillis;
+     * must not be modified.
+     */
+    long[] interestingDateMillis() {
+        return interestingDateMillis != null ? interestingDateMillis : toMillis(interestingDates);
+    }
+
+    private static long[] toMillis(List<Date> dates) {
+        if (dates == null) {
+            return null;
+        }
+        long[] millis = new long[dates.size()];
+        int i = 0;
+        for (Date date : dates) {
+            millis[i++] = date.getTime();
+        }
+        return millis;
+    }
+
+    private static class DateView extends AbstractList<Date> implements RandomAccess {
+        private final long[] millis;
+
+        private DateView(long[] millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public Date get(int index) {
+            return new Date(millis[index]);
+        }
+
+        @Override
+        public int size() {
+            return millis.length;
+        }
+    }
 }
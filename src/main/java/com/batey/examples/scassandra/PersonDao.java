@@ -1,6 +1,9 @@
 package com.batey.examples.scassandra;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface PersonDao {
     void connect();
@@ -9,7 +12,49 @@ public interface PersonDao {
 
     List<Person> retrievePeople();
 
+    /**
+     * Like {@link #retrievePeople()}, giving up with UnableToRetrievePeopleException once the deadline has passed,
+     * retries and the fetching of later pages included.
+     */
+    List<Person> retrievePeople(Deadline deadline);
+
+    /**
+     * Lazily streams every person, fetching {@code fetchSize} rows per page so only one page is held in memory
+     * at a time. Further pages are requested as the stream is consumed.
+     */
+    Stream<Person> streamPeople(int fetchSize);
+
+    /**
+     * Like {@link #streamPeople(int)}, with every column of each person, interesting dates included.
+     */
+    Stream<Person> streamPeopleWithDates(int fetchSize);
+
     List<Person> retrievePeopleByName(String firstName);
 
+    /**
+     * Like {@link #retrievePeopleByName(String)}, giving up with UnableToRetrievePeopleException once the deadline
+     * has passed, retries included.
+     */
+    List<Person> retrievePeopleByName(String firstName, Deadline deadline);
+
+    /**
+     * Looks up several names at once, issuing the lookups concurrently rather than one round trip after another.
+     *
+     * @return the people found for each distinct name, in the order the names were given.
+     */
+    Map<String, List<Person>> retrievePeopleByNames(Collection<String> firstNames);
+
     void storePerson(Person person);
+
+    /**
+     * Like {@link #storePerson(Person)}, giving up with UnableToSavePersonException once the deadline has passed.
+     */
+    void storePerson(Person person, Deadline deadline);
+
+    /**
+     * Stores many people, pipelining the writes. A failed write does not stop the others.
+     *
+     * @return the people that could not be stored; empty when all were.
+     */
+    List<StoreFailure> storePeople(Collection<Person> people);
 }
@@ -1,97 +1,1232 @@
 package com.batey.examples.scassandra;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
 import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.DowngradingConsistencyRetryPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
 import com.datastax.driver.core.policies.LoggingRetryPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
 import com.datastax.driver.core.policies.RetryPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PersonDaoCassandra implements PersonDao {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersonDaoCassandra.class);
+    private static final long HIGHEST_TRACKED_LATENCY_MILLIS = 15_000;
+
     private int port;
     private int retries;
     private Cluster cluster;
     private Session session;
-    private PreparedStatement storeStatement;
-    private PreparedStatement retrieveStatement;
+    private PreparedStatements statements;
+    private ProtocolVersion protocolVersion;
+    private PersonRowMapper personMapper;
+    private TokenRangeScanner scanner;
+    private long retrievePeopleTimeoutMillis;
+    private long retrieveByNameTimeoutMillis = 500;
+    private long storeTimeoutMillis = 500;
+    private boolean deferNonCriticalStatements;
+    private int warmUpLookups = 1000;
+    private String warmUpName = "warm-up";
+    private long warmUpPoolTimeoutMillis = 5000;
+    private volatile boolean warm;
+    private Map<String, Long> connectTimings = Collections.emptyMap();
+    private boolean nativeTransport;
+    private int eventLoopThreads;
+    private int callbackThreads;
+    private ExecutorService callbackPool;
+    private Executor callbackExecutor = CompletableFutures.SAME_THREAD;
+    private ProtocolOptions.Compression compression = ProtocolOptions.Compression.NONE;
+    private String localDataCenter;
+    private int usedHostsPerRemoteDc;
+    private boolean tokenAware = true;
+    private boolean latencyAware;
+    private double latencyExclusionThreshold = 2.0;
+    private int coreConnectionsPerHost;
+    private int maxConnectionsPerHost;
+    private int maxRequestsPerConnection;
+    private int poolTimeoutMillis = -1;
+    private int scanSplits = 1;
+    private int maxConcurrentScans = Runtime.getRuntime().availableProcessors();
+    private int maxInFlightLookups = 64;
+    private int maxInFlightWrites = 128;
+    private long speculativeReadDelayMillis;
+    private double speculativeReadPercentile;
+    private ScheduledExecutorService deadlineScheduler;
+    private int writeBehindCapacity;
+    private int writeBehindBatchSize = 100;
+    private long writeBehindFlushMillis = 50;
+    private long writeCoalescingMillis;
+    private int writeCoalescingCapacity = 10_000;
+    private File journalDirectory;
+    private int journalSegmentSize = 16 * 1024 * 1024;
+    private FsyncPolicy journalFsyncPolicy = FsyncPolicy.INTERVAL;
+    private long journalSyncIntervalMillis = 100;
+    private long journalRetryMillis = 1000;
+    private int journalMaxReplayAttempts = 10;
+    private long journalMaxBacklogBytes = 256L * 1024 * 1024;
+    private PersonWriter writer;
+    private int initialConcurrencyLimit;
+    private int maxConcurrencyLimit = 1000;
+    private double concurrencyLatencyTolerance = 2.0;
+    private AdaptiveConcurrencyLimiter limiter;
+    private final ClusterLifecycle lifecycle = new ClusterLifecycle(this::buildCluster, "people");
+    private final AsyncPersonDao async = new AsyncView();
 
     public PersonDaoCassandra(int port, int retries) {
         this.port = port;
         this.retries = retries;
     }
 
+    /**
+     * Budget for retrievePeople() when no deadline is passed in, retries and every page included. 0, the default,
+     * leaves scans without a deadline: the whole table takes far longer than a point read, so the by-name budget
+     * would be no guide.
+     */
+    public void setRetrievePeopleTimeoutMillis(long retrievePeopleTimeoutMillis) {
+        this.retrievePeopleTimeoutMillis = retrievePeopleTimeoutMillis;
+    }
+
+    /**
+     * Budget for each by-name lookup when no deadline is passed in, retries included; 500ms by default.
+     */
+    public void setRetrieveByNameTimeoutMillis(long retrieveByNameTimeoutMillis) {
+        this.retrieveByNameTimeoutMillis = retrieveByNameTimeoutMillis;
+    }
+
+    /**
+     * Budget for each synchronous write when no deadline is passed in; 500ms by default.
+     */
+    public void setStoreTimeoutMillis(long storeTimeoutMillis) {
+        this.storeTimeoutMillis = storeTimeoutMillis;
+    }
+
+    /**
+     * When set, connect() only prepares the statements behind storePerson() and the by-name lookups; the full scan
+     * and token range queries are prepared on first use. Off by default; must be set before connect().
+     */
+    public void setDeferNonCriticalStatements(boolean deferNonCriticalStatements) {
+        this.deferNonCriticalStatements = deferNonCriticalStatements;
+    }
+
+    /**
+     * Number of synthetic by-name lookups warmUp() runs to warm the JIT and the connections; 1000 by default.
+     */
+    public void setWarmUpLookups(int warmUpLookups) {
+        this.warmUpLookups = warmUpLookups;
+    }
+
+    /**
+     * Name the synthetic warm-up lookups ask for, ideally one nobody has.
+     */
+    public void setWarmUpName(String warmUpName) {
+        this.warmUpName = warmUpName;
+    }
+
+    /**
+     * How long warmUp() waits for each host's pool to open its core connections.
+     */
+    public void setWarmUpPoolTimeoutMillis(long warmUpPoolTimeoutMillis) {
+        this.warmUpPoolTimeoutMillis = warmUpPoolTimeoutMillis;
+    }
+
+    /**
+     * Milliseconds the last connect() spent in each phase: {@code cluster} (initialising the cluster and opening the
+     * session), {@code prepare} and {@code total}, in that order.
+     */
+    public Map<String, Long> getConnectTimings() {
+        return connectTimings;
+    }
+
+    /**
+     * Registry holding the driver's metrics along with this DAO's own gauges, all named {@code person-dao.*}; null
+     * while not connected or when the Cluster was built without metrics.
+     */
+    public MetricRegistry getMetricRegistry() {
+        Metrics metrics = cluster == null ? null : cluster.getMetrics();
+        return metrics == null ? null : metrics.getRegistry();
+    }
+
+    /**
+     * Whether to use Netty's native epoll transport instead of NIO; falls back to NIO with a warning where epoll
+     * is unavailable, e.g. off Linux. Off by default. Takes effect when a Cluster is built, like the other
+     * transport settings.
+     */
+    public void setNativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * I/O threads of the driver's event loop group; 0, the default, lets Netty pick two per core. Clusters with
+     * the same transport and thread count share one group.
+     */
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    /**
+     * Threads that complete the futures of async() and map the rows of later pages. 0, the default, does this on
+     * the driver's I/O threads, which is cheapest but lets slow callbacks delay other requests' I/O. Must be set
+     * before connect(); the threads then live until disconnect(), so reconnect() keeps their number.
+     */
+    public void setCallbackThreads(int callbackThreads) {
+        this.callbackThreads = callbackThreads;
+    }
+
+    /**
+     * Frame compression between the driver and Cassandra. LZ4 and SNAPPY trade CPU on both ends for less network
+     * traffic, which pays off for large scans rather than point reads; they need lz4 or snappy-java on the
+     * classpath. Defaults to NONE; must be set before connect().
+     */
+    public void setCompression(ProtocolOptions.Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Data center whose hosts are queried; null, the default, takes the data center of the contact point. Hosts in
+     * other data centers are only tried when setUsedHostsPerRemoteDc is above zero. Must be set before connect(), as
+     * must the other load balancing settings.
+     */
+    public void setLocalDataCenter(String localDataCenter) {
+        this.localDataCenter = localDataCenter;
+    }
+
+    /**
+     * How many hosts of each remote data center are tried once every local host has failed, after them in the
+     * query plan. Defaults to 0, keeping queries inside the local data center however many of its hosts are down.
+     */
+    public void setUsedHostsPerRemoteDc(int usedHostsPerRemoteDc) {
+        this.usedHostsPerRemoteDc = usedHostsPerRemoteDc;
+    }
+
+    /**
+     * Whether requests with a routing key, such as the by-name lookups and stores, go straight to a replica of
+     * their partition rather than through a coordinator that forwards them. On by default.
+     */
+    public void setTokenAware(boolean tokenAware) {
+        this.tokenAware = tokenAware;
+    }
+
+    /**
+     * Whether hosts whose recent latency is well above the fastest host's are skipped while faster ones are
+     * available. Off by default.
+     */
+    public void setLatencyAware(boolean latencyAware) {
+        this.latencyAware = latencyAware;
+    }
+
+    /**
+     * How many times slower than the fastest host a host may be before latency aware routing avoids it.
+     */
+    public void setLatencyExclusionThreshold(double latencyExclusionThreshold) {
+        this.latencyExclusionThreshold = latencyExclusionThreshold;
+    }
+
+    /**
+     * Connections kept open to each local host; 0, the default, leaves the driver's default for the negotiated
+     * protocol version. Must be set before connect(), as must the other pool settings.
+     */
+    public void setCoreConnectionsPerHost(int coreConnectionsPerHost) {
+        this.coreConnectionsPerHost = coreConnectionsPerHost;
+    }
+
+    /**
+     * Connections the pool may grow to per local host under load; 0 leaves the driver's default.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Requests a single connection may carry at once; 0 leaves the driver's default. Protocol v3 allows up to 32768.
+     */
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    /**
+     * How long a request waits for a connection with spare capacity before failing over to the next host; a
+     * negative value, the default, leaves the driver's default.
+     */
+    public void setPoolTimeoutMillis(int poolTimeoutMillis) {
+        this.poolTimeoutMillis = poolTimeoutMillis;
+    }
+
+    /**
+     * Number of token sub-ranges retrievePeople() splits the ring into. The default of 1 keeps the single
+     * coordinator scan; must be set before connect().
+     */
+    public void setScanSplits(int scanSplits) {
+        this.scanSplits = scanSplits;
+    }
+
+    /**
+     * Upper bound on the sub-range queries a parallel scan has in flight at once.
+     */
+    public void setMaxConcurrentScans(int maxConcurrentScans) {
+        this.maxConcurrentScans = maxConcurrentScans;
+    }
+
+    /**
+     * Upper bound on the lookups retrievePeopleByNames() has in flight at once.
+     */
+    public void setMaxInFlightLookups(int maxInFlightLookups) {
+        this.maxInFlightLookups = maxInFlightLookups;
+    }
+
+    /**
+     * Upper bound on the writes storePeople() has in flight at once; callers block while it is reached.
+     */
+    public void setMaxInFlightWrites(int maxInFlightWrites) {
+        this.maxInFlightWrites = maxInFlightWrites;
+    }
+
+    /**
+     * Enables speculative by-name lookups: a lookup still outstanding after this many millis is sent to the next
+     * host of its query plan as well, and the first answer wins. 0, the default, disables them unless a percentile
+     * is set. The driver counts the extra attempts in its speculative-executions metric. Must be set before
+     * connect(); it is part of the Cluster's configuration.
+     */
+    public void setSpeculativeReadDelayMillis(long speculativeReadDelayMillis) {
+        this.speculativeReadDelayMillis = speculativeReadDelayMillis;
+    }
+
+    /**
+     * Sends by-name lookups to a second host once they are slower than this percentile (0-100) of the recent
+     * latencies of the host they went to; takes precedence over the fixed delay. Nothing is sent twice until the
+     * driver has measured enough requests to that host. Must be set before connect().
+     */
+    public void setSpeculativeReadPercentile(double speculativeReadPercentile) {
+        this.speculativeReadPercentile = speculativeReadPercentile;
+    }
+
+    /**
+     * Enables write-behind: storePerson() queues up to this many people and returns, and a background flusher
+     * writes them, skipping any superseded by a later person with the same name. 0, the default, writes
+     * synchronously.
+     */
+    public void setWriteBehindCapacity(int writeBehindCapacity) {
+        this.writeBehindCapacity = writeBehindCapacity;
+    }
+
+    /**
+     * Number of queued people that triggers a write-behind flush.
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    /**
+     * Longest a queued person waits for its write-behind batch to fill before being written anyway.
+     */
+    public void setWriteBehindFlushMillis(long writeBehindFlushMillis) {
+        this.writeBehindFlushMillis = writeBehindFlushMillis;
+    }
+
+    /**
+     * Enables write coalescing: storePerson() holds each person for this long and only writes the latest person
+     * saved under the same name in that window. Like write-behind, this makes storePerson() fire-and-forget: it
+     * returns before the write, flush() waits for it, and a failed write is only logged and counted in
+     * person-dao.coalescing.failed rather than thrown as UnableToSavePersonException. With the journal, people
+     * are journalled at once and the window applies to the replay instead. 0, the default, writes every call.
+     */
+    public void setWriteCoalescingMillis(long writeCoalescingMillis) {
+        this.writeCoalescingMillis = writeCoalescingMillis;
+    }
+
+    /**
+     * Upper bound on the names held in the coalescing window at once; storePerson() blocks for a new name while it
+     * is reached. 10000 by default.
+     */
+    public void setWriteCoalescingCapacity(int writeCoalescingCapacity) {
+        this.writeCoalescingCapacity = writeCoalescingCapacity;
+    }
+
+    /**
+     * Enables the local journal: storePerson() returns once the person is appended to a journal in this directory
+     * and a background replayer writes the journal to Cassandra, retrying while no host is available. Takes the
+     * place of write-behind if both are configured; entries not yet replayed at disconnect() are replayed on the
+     * next connect().
+     */
+    public void setJournalDirectory(File journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Size of each memory-mapped journal segment file.
+     */
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public void setJournalFsyncPolicy(FsyncPolicy journalFsyncPolicy) {
+        this.journalFsyncPolicy = journalFsyncPolicy;
+    }
+
+    /**
+     * How often the journal is forced to disk under {@link FsyncPolicy#INTERVAL}.
+     */
+    public void setJournalSyncIntervalMillis(long journalSyncIntervalMillis) {
+        this.journalSyncIntervalMillis = journalSyncIntervalMillis;
+    }
+
+    /**
+     * How long the replayer waits before retrying after Cassandra rejected or timed out a batch.
+     */
+    public void setJournalRetryMillis(long journalRetryMillis) {
+        this.journalRetryMillis = journalRetryMillis;
+    }
+
+    /**
+     * Attempts the replayer makes at a batch while hosts are up before logging the people it still could not write
+     * as dead letters and moving on; 10 by default. Time spent with no host up does not count.
+     */
+    public void setJournalMaxReplayAttempts(int journalMaxReplayAttempts) {
+        this.journalMaxReplayAttempts = journalMaxReplayAttempts;
+    }
+
+    /**
+     * Unreplayed journal bytes beyond which storePerson() fails with UnableToSavePersonException; 256MB by default.
+     */
+    public void setJournalMaxBacklogBytes(long journalMaxBacklogBytes) {
+        this.journalMaxBacklogBytes = journalMaxBacklogBytes;
+    }
+
+    /**
+     * Enables the adaptive concurrency limit, starting at this many requests in flight. Requests over the current
+     * limit fail fast with UnableToRetrievePeopleException or UnableToSavePersonException instead of queueing in
+     * the driver; storePeople(), retrievePeopleByNames() and warmUp() instead wait for room, within each request's
+     * timeout. 0, the default, leaves concurrency unlimited.
+     */
+    public void setInitialConcurrencyLimit(int initialConcurrencyLimit) {
+        this.initialConcurrencyLimit = initialConcurrencyLimit;
+    }
+
+    /**
+     * Ceiling the adaptive concurrency limit never grows beyond.
+     */
+    public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+    }
+
+    /**
+     * How many times slower than the best recent round trip a request may be before the concurrency limit is
+     * lowered.
+     */
+    public void setConcurrencyLatencyTolerance(double concurrencyLatencyTolerance) {
+        this.concurrencyLatencyTolerance = concurrencyLatencyTolerance;
+    }
+
+    /**
+     * Connects, reusing the open Cluster and Session if there are any, along with the statements already prepared
+     * on them; only a new Session has its statements prepared again. Settings that shape the Cluster, such as pooling, load balancing and compression, only take effect when a
+     * new one is built, on the first connect() or on reconnect().
+     */
     @Override
     public void connect() {
+        long start = System.nanoTime();
+        session = lifecycle.connect();
+        cluster = lifecycle.cluster();
+        long connected = System.nanoTime();
+        protocolVersion = cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum();
+        personMapper = PersonRowMapper.full(protocolVersion);
+        if (statements == null || !statements.belongTo(session)) {
+            statements = new PreparedStatements(session);
+        }
+        List<PersonQuery> eager = new ArrayList<>(Arrays.asList(PersonQuery.STORE, PersonQuery.RETRIEVE_BY_NAME));
+        if (!deferNonCriticalStatements) {
+            eager.add(PersonQuery.RETRIEVE_ALL);
+            if (scanSplits > 1) {
+                eager.add(PersonQuery.RETRIEVE_TOKEN_RANGE);
+            }
+        }
+        int preparedCount = statements.prepare(eager.toArray(new PersonQuery[eager.size()]));
+        long prepared = System.nanoTime();
+        if (scanSplits > 1) {
+            scanner = new TokenRangeScanner(session, () -> statements.get(PersonQuery.RETRIEVE_TOKEN_RANGE), scanSplits, maxConcurrentScans);
+        }
+        registerMetric("person-dao.pool.open-connections", (Gauge<Integer>) () -> sumOverHosts(Session.State::getOpenConnections));
+        registerMetric("person-dao.pool.in-flight", (Gauge<Integer>) () -> sumOverHosts(Session.State::getInFlightQueries));
+        registerMetric("person-dao.pool.utilization", (Gauge<Double>) this::poolUtilization);
+        startCallbackPool();
+        if (deadlineScheduler == null) {
+            deadlineScheduler = startDeadlineScheduler();
+        }
+        if (initialConcurrencyLimit > 0) {
+            limiter = new AdaptiveConcurrencyLimiter(initialConcurrencyLimit, 1, maxConcurrencyLimit, concurrencyLatencyTolerance);
+            registerMetric("person-dao.concurrency-limit", (Gauge<Integer>) limiter::getLimit);
+            registerMetric("person-dao.in-flight", (Gauge<Integer>) limiter::getInFlight);
+            registerMetric("person-dao.rejected", (Gauge<Long>) limiter::getRejectedCount);
+        }
+        closeWriter();
+        if (journalDirectory != null) {
+            PersonJournal journal;
+            try {
+                journal = new PersonJournal(journalDirectory, journalSegmentSize, journalFsyncPolicy);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            JournallingWriter journalling = new JournallingWriter(journal, session, this::bindStore,
+                    writeBehindBatchSize, writeCoalescingMillis, journalSyncIntervalMillis, journalRetryMillis,
+                    journalMaxReplayAttempts, journalMaxBacklogBytes);
+            registerMetric("person-dao.journal.backlog-bytes", (Gauge<Long>) journalling::getBacklogBytes);
+            registerMetric("person-dao.journal.replayed", (Gauge<Long>) journalling::getReplayedCount);
+            registerMetric("person-dao.journal.failed-replays", (Gauge<Long>) journalling::getFailedReplayCount);
+            registerMetric("person-dao.journal.coalesced", (Gauge<Long>) journalling::getCoalescedCount);
+            registerMetric("person-dao.journal.dead-lettered", (Gauge<Long>) journalling::getDeadLetteredCount);
+            writer = journalling;
+        } else if (writeBehindCapacity > 0) {
+            WriteBehindWriter writeBehind = new WriteBehindWriter(session, this::bindStore, writeBehindCapacity,
+                    writeBehindBatchSize, writeBehindFlushMillis);
+            registerMetric("person-dao.write-behind.queued", (Gauge<Long>) writeBehind::getQueuedCount);
+            registerMetric("person-dao.write-behind.failed", (Gauge<Long>) writeBehind::getFailedCount);
+            writer = writeBehind;
+        }
+        // the journal coalesces as it replays, once people are durable; holding them in memory first would not be
+        if (writeCoalescingMillis > 0 && journalDirectory == null) {
+            DirectWriter direct = writer == null ? new DirectWriter() : null;
+            CoalescingWriter coalescing = new CoalescingWriter(direct != null ? direct : writer,
+                    writeCoalescingMillis, writeCoalescingCapacity);
+            registerMetric("person-dao.coalescing.suppressed", (Gauge<Long>) coalescing::getSuppressedCount);
+            registerMetric("person-dao.coalescing.pending", (Gauge<Long>) coalescing::getPendingCount);
+            registerMetric("person-dao.coalescing.failed", (Gauge<Long>) () ->
+                    coalescing.getFailedCount() + (direct != null ? direct.getFailedCount() : 0));
+            writer = coalescing;
+        }
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        timings.put("cluster", TimeUnit.NANOSECONDS.toMillis(connected - start));
+        timings.put("prepare", TimeUnit.NANOSECONDS.toMillis(prepared - connected));
+        timings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        connectTimings = Collections.unmodifiableMap(timings);
+        LOGGER.info("Connected to Cassandra on port {}, prepared {} statements, in {}ms {}", port, preparedCount,
+                timings.get("total"), timings);
+    }
+
+    /**
+     * Round robin over the local data center, optionally with slow hosts moved to the back, wrapped in token aware
+     * routing so a statement with a routing key tries the replicas of its partition first. Statements without one,
+     * like the full scan, and retries past the replicas follow the inner policies.
+     */
+    private LoadBalancingPolicy loadBalancingPolicy() {
+        DCAwareRoundRobinPolicy.Builder dcAware = DCAwareRoundRobinPolicy.builder()
+                .withUsedHostsPerRemoteDc(usedHostsPerRemoteDc);
+        if (localDataCenter != null) {
+            dcAware.withLocalDc(localDataCenter);
+        }
+        LoadBalancingPolicy policy = dcAware.build();
+        if (latencyAware) {
+            policy = LatencyAwarePolicy.builder(policy)
+                    .withExclusionThreshold(latencyExclusionThreshold)
+                    .build();
+        }
+        if (tokenAware) {
+            policy = new TokenAwarePolicy(policy);
+        }
+        return policy;
+    }
+
+    /**
+     * Only idempotent statements are ever sent twice, and of this DAO's statements only the by-name lookup is
+     * marked so.
+     */
+    SpeculativeExecutionPolicy speculativeExecutionPolicy() {
+        if (speculativeReadPercentile > 0) {
+            PerHostPercentileTracker latencies = PerHostPercentileTracker
+                    .builderWithHighestTrackableLatencyMillis(HIGHEST_TRACKED_LATENCY_MILLIS)
+                    .build();
+            return new PercentileSpeculativeExecutionPolicy(latencies, speculativeReadPercentile, 1);
+        }
+        if (speculativeReadDelayMillis > 0) {
+            return new ConstantSpeculativeExecutionPolicy(speculativeReadDelayMillis, 1);
+        }
+        return NoSpeculativeExecutionPolicy.INSTANCE;
+    }
+
+    private Cluster buildCluster() {
         SocketOptions socketOptions = new SocketOptions();
+        // bounds each attempt, deadline or not; the deadline bounds the whole operation, retries included
         socketOptions.setReadTimeoutMillis(500);
-        cluster = Cluster.builder()
+        return Cluster.builder()
                 .addContactPoint("localhost")
                 .withPort(port)
-                .withRetryPolicy(new LoggingRetryPolicy(new RetryReads()))
+                .withRetryPolicy(new LoggingRetryPolicy(new RetryReads(null)))
                 .withSocketOptions(socketOptions)
+                .withCompression(compression)
+                .withPoolingOptions(poolingOptions())
+                .withLoadBalancingPolicy(loadBalancingPolicy())
+                .withNettyOptions(SharedNettyOptions.get(nativeTransport, eventLoopThreads))
+                .withSpeculativeExecutionPolicy(speculativeExecutionPolicy())
                 .build();
-        session = cluster.connect("people");
-        storeStatement = session.prepare("insert into person(name, age, interesting_dates) values (?,?,?)");
-        retrieveStatement = session.prepare("select * from person where name = ?");
+    }
+
+    private PoolingOptions poolingOptions() {
+        PoolingOptions pooling = new PoolingOptions();
+        if (coreConnectionsPerHost > 0 && maxConnectionsPerHost > 0) {
+            pooling.setConnectionsPerHost(HostDistance.LOCAL, coreConnectionsPerHost, maxConnectionsPerHost);
+        } else if (coreConnectionsPerHost > 0) {
+            pooling.setCoreConnectionsPerHost(HostDistance.LOCAL, coreConnectionsPerHost);
+        } else if (maxConnectionsPerHost > 0) {
+            pooling.setMaxConnectionsPerHost(HostDistance.LOCAL, maxConnectionsPerHost);
+        }
+        if (maxRequestsPerConnection > 0) {
+            pooling.setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection);
+        }
+        if (poolTimeoutMillis >= 0) {
+            pooling.setPoolTimeoutMillis(poolTimeoutMillis);
+        }
+        return pooling;
+    }
+
+    private int sumOverHosts(ToIntBiFunction<Session.State, Host> perHost) {
+        Session.State state = session.getState();
+        int sum = 0;
+        for (Host host : state.getConnectedHosts()) {
+            sum += perHost.applyAsInt(state, host);
+        }
+        return sum;
+    }
+
+    /**
+     * In-flight requests as a fraction of what the open connections can carry.
+     */
+    private double poolUtilization() {
+        int capacity = sumOverHosts(Session.State::getOpenConnections)
+                * cluster.getConfiguration().getPoolingOptions().getMaxRequestsPerConnection(HostDistance.LOCAL);
+        return capacity == 0 ? 0 : (double) sumOverHosts(Session.State::getInFlightQueries) / capacity;
+    }
+
+    /**
+     * Flushes the writer and stops it; must happen while the Session it writes through is still open.
+     */
+    private void closeWriter() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Keeps a pool that is already running: callbacks of requests still in flight may be queued on it, and a
+     * shut down pool would reject them and leave their futures incomplete.
+     */
+    private void startCallbackPool() {
+        if (callbackPool == null && callbackThreads > 0) {
+            callbackPool = Executors.newFixedThreadPool(callbackThreads, runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("person-dao-callback-" + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            callbackExecutor = callbackPool;
+        }
+    }
+
+    private void stopCallbackPool() {
+        if (callbackPool != null) {
+            callbackPool.shutdown();
+            callbackPool = null;
+        }
+        callbackExecutor = CompletableFutures.SAME_THREAD;
+    }
+
+    /**
+     * Fails asynchronous operations whose deadline passes before the driver answers; the driver itself only has
+     * the socket read timeout, which applies to each attempt rather than to the operation.
+     */
+    private static ScheduledExecutorService startDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("person-dao-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Publishes a metric alongside the driver's own in the cluster's registry, if metrics are enabled.
+     */
+    private void registerMetric(String name, Metric metric) {
+        Metrics metrics = cluster.getMetrics();
+        if (metrics != null) {
+            metrics.getRegistry().remove(name);
+            metrics.getRegistry().register(name, metric);
+        }
+    }
+
+    /**
+     * Gets a connected DAO ready for full speed traffic: prepares the statements not prepared yet, such as deferred
+     * ones, waits for each host's pool to open its core connections and runs the configured number of synthetic
+     * lookups, as many at once as bulk lookups and the concurrency limit allow. Failed lookups are only counted in
+     * the log; isWarm() is true afterwards.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        statements.prepare(PersonQuery.values());
+        awaitCoreConnections();
+
+        Semaphore permits = new Semaphore(maxInFlightLookups);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < warmUpLookups; i++) {
+            permits.acquireUninterruptibly();
+            CompletableFuture<List<Person>> lookup;
+            try {
+                lookup = lookupAsync(warmUpName, true);
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                permits.release();
+                continue;
+            }
+            lookup.whenComplete((people, error) -> {
+                if (error != null) {
+                    failed.incrementAndGet();
+                }
+                permits.release();
+            });
+        }
+        permits.acquireUninterruptibly(maxInFlightLookups);
+        warm = true;
+        LOGGER.info("Warmed up with {} lookups ({} failed) in {}ms", warmUpLookups, failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Whether warmUp() has completed since the DAO last connected with a new Cluster.
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    private void awaitCoreConnections() {
+        int core = cluster.getConfiguration().getPoolingOptions().getCoreConnectionsPerHost(HostDistance.LOCAL);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmUpPoolTimeoutMillis);
+        for (Host host : session.getState().getConnectedHosts()) {
+            while (session.getState().getOpenConnections(host) < core && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the current Cluster and Session and connects with new ones, for failing over or applying changed
+     * Cluster settings. People already accepted by write-behind, coalescing or the journal are written through the
+     * old Session before it is closed.
+     */
+    public void reconnect() {
+        warm = false;
+        closeWriter();
+        scanner = null;
+        lifecycle.close();
+        connect();
     }
 
     @Override
     public void disconnect() {
-        cluster.close();
+        warm = false;
+        closeWriter();
+        scanner = null;
+        if (deadlineScheduler != null) {
+            deadlineScheduler.shutdownNow();
+            deadlineScheduler = null;
+        }
+        stopCallbackPool();
+        lifecycle.close();
     }
 
     @Override
     public List<Person> retrievePeople() {
-        ResultSet result;
+        return retrievePeople(scanDeadline());
+    }
+
+    /**
+     * @return null, for no deadline, unless a scan timeout has been set.
+     */
+    private Deadline scanDeadline() {
+        return retrievePeopleTimeoutMillis > 0 ? Deadline.after(retrievePeopleTimeoutMillis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    @Override
+    public List<Person> retrievePeople(Deadline deadline) {
+        if (scanner != null) {
+            List<TokenRange> ranges = scanner.split(cluster.getMetadata().getTokenRanges());
+            if (!ranges.isEmpty()) {
+                return scanner.scan(ranges, PersonRowMapper.SUMMARY, deadline, statement -> {
+                    if (!bound(statement, deadline)) {
+                        throw new UnableToRetrievePeopleException();
+                    }
+                });
+            }
+        }
+
         try {
-            Statement statement = new SimpleStatement("select * from person");
-            statement.setConsistencyLevel(ConsistencyLevel.QUORUM);
-            result = session.execute(statement);
+            ResultSet result = execute(fullScan(), deadline, UnableToRetrievePeopleException::new);
+            CompletableFuture<List<Person>> people = PagedResults.collect(result, new ArrayList<>(),
+                    PersonRowMapper.SUMMARY, CompletableFutures.SAME_THREAD, deadline,
+                    UnableToRetrievePeopleException::new);
+            return CompletableFutures.join(withinDeadline(people, deadline, UnableToRetrievePeopleException::new));
         } catch (ReadTimeoutException e) {
             throw new UnableToRetrievePeopleException();
         }
+    }
 
-        List<Person> people = result.all().stream().map(
-                row -> new Person(row.getString("first_name"), row.getInt("age"), Collections.emptyList())
-        ).collect(Collectors.toList());
+    @Override
+    public Stream<Person> streamPeople(int fetchSize) {
+        return stream(fetchSize, PersonRowMapper.SUMMARY);
+    }
 
-        return people;
+    @Override
+    public Stream<Person> streamPeopleWithDates(int fetchSize) {
+        return stream(fetchSize, personMapper);
+    }
+
+    private Stream<Person> stream(int fetchSize, Function<Row, Person> mapper) {
+        ResultSet result;
+        try {
+            Statement statement = fullScan();
+            statement.setFetchSize(fetchSize);
+            // no deadline: how long the stream takes is up to its consumer
+            result = execute(statement, null, UnableToRetrievePeopleException::new);
+        } catch (ReadTimeoutException e) {
+            throw new UnableToRetrievePeopleException();
+        }
+
+        Spliterator<Row> rows = Spliterators.spliteratorUnknownSize(new PagedRows(result.iterator()),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(rows, false).map(mapper);
     }
 
     @Override
     public List<Person> retrievePeopleByName(String firstName) {
-        BoundStatement bind = retrieveStatement.bind(firstName);
-        ResultSet result = session.execute(bind);
+        return retrievePeopleByName(firstName, Deadline.after(retrieveByNameTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public List<Person> retrievePeopleByName(String firstName, Deadline deadline) {
+        ResultSet result = execute(bindLookup(firstName), deadline, UnableToRetrievePeopleException::new);
 
         List<Person> people = new ArrayList<>();
         for (Row row : result) {
-            people.add(new Person(row.getString("name"), row.getInt("age"), row.getList("interesting_dates", Date.class)));
+            people.add(personMapper.apply(row));
+        }
+        return people;
+    }
+
+    @Override
+    public Map<String, List<Person>> retrievePeopleByNames(Collection<String> firstNames) {
+        Semaphore permits = new Semaphore(maxInFlightLookups);
+        Map<String, CompletableFuture<List<Person>>> lookups = new LinkedHashMap<>();
+        for (String firstName : firstNames) {
+            if (lookups.containsKey(firstName)) {
+                continue;
+            }
+            permits.acquireUninterruptibly();
+            CompletableFuture<List<Person>> lookup = lookupAsync(firstName, true);
+            lookup.whenComplete((people, error) -> permits.release());
+            lookups.put(firstName, lookup);
+        }
+
+        Map<String, List<Person>> people = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<Person>>> lookup : lookups.entrySet()) {
+            people.put(lookup.getKey(), CompletableFutures.join(lookup.getValue()));
         }
         return people;
     }
 
     @Override
     public void storePerson(Person person) {
+        storePerson(person, Deadline.after(storeTimeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * The deadline only bounds synchronous writes; with write-behind, coalescing or the journal the call returns as
+     * soon as the person is accepted.
+     */
+    @Override
+    public void storePerson(Person person, Deadline deadline) {
+        if (writer != null) {
+            writer.write(person);
+            return;
+        }
+        storeNow(person, deadline);
+    }
+
+    private void storeNow(Person person, Deadline deadline) {
         try {
-            BoundStatement bind = storeStatement.bind(person.getName(), person.getAge(), person.getInterestingDates());
-            session.execute(bind);
+            execute(bindStore(person), deadline, UnableToSavePersonException::new);
         } catch (NoHostAvailableException e) {
             throw new UnableToSavePersonException();
         }
     }
 
+    @Override
+    public List<StoreFailure> storePeople(Collection<Person> people) {
+        Semaphore permits = new Semaphore(maxInFlightWrites);
+        List<StoreFailure> failures = Collections.synchronizedList(new ArrayList<>());
+        for (Person person : people) {
+            permits.acquireUninterruptibly();
+            CompletableFuture<Void> write;
+            try {
+                write = storeAsync(person, true);
+            } catch (RuntimeException e) {
+                failures.add(new StoreFailure(person, e));
+                permits.release();
+                continue;
+            }
+            write.whenComplete((stored, error) -> {
+                if (error != null) {
+                    failures.add(new StoreFailure(person, CompletableFutures.unwrap(error)));
+                }
+                permits.release();
+            });
+        }
+        // every permit is back once the last write has completed
+        permits.acquireUninterruptibly(maxInFlightWrites);
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * Blocks until every person already passed to storePerson() has been written; a no-op unless storePerson()
+     * writes behind or coalesces.
+     */
+    public void flush() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * A non-blocking view of this DAO sharing its session and prepared statements; only usable once connected.
+     */
+    public AsyncPersonDao async() {
+        return async;
+    }
+
+    /**
+     * Runs the statement within the deadline, and within the concurrency limit if one is configured; an expired
+     * deadline or a rejection by the limit fails fast with the exception from {@code failure}, as does a query
+     * still unanswered when the deadline passes, which is then cancelled.
+     */
+    private ResultSet execute(Statement statement, Deadline deadline, Supplier<? extends RuntimeException> failure) {
+        if (!bound(statement, deadline)) {
+            throw failure.get();
+        }
+        if (limiter == null) {
+            return await(session.executeAsync(statement), deadline, failure);
+        }
+        if (!limiter.tryAcquire()) {
+            throw failure.get();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet result = await(session.executeAsync(statement), deadline, failure);
+            failed = false;
+            return result;
+        } finally {
+            limiter.release(System.nanoTime() - start, failed);
+        }
+    }
+
+    private static ResultSet await(ResultSetFuture query, Deadline deadline, Supplier<? extends RuntimeException> failure) {
+        if (deadline == null) {
+            return query.getUninterruptibly();
+        }
+        try {
+            return query.getUninterruptibly(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            query.cancel(true);
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Like {@link #execute(Statement, Deadline, Supplier)}; failing fast or running out of time completes the
+     * returned future exceptionally rather than throwing.
+     */
+    private CompletableFuture<ResultSet> executeAsync(Statement statement, Deadline deadline,
+                                                      Supplier<? extends RuntimeException> failure) {
+        return executeAsync(statement, deadline, false, failure);
+    }
+
+    /**
+     * @param waitForPermit whether to block, within the deadline, until the concurrency limit has room instead of
+     *                      failing fast; for the bulk paths, which would otherwise drop whatever exceeds the limit.
+     */
+    private CompletableFuture<ResultSet> executeAsync(Statement statement, Deadline deadline, boolean waitForPermit,
+                                                      Supplier<? extends RuntimeException> failure) {
+        if (!bound(statement, deadline) || (limiter != null && !admit(deadline, waitForPermit))) {
+            CompletableFuture<ResultSet> rejection = new CompletableFuture<>();
+            rejection.completeExceptionally(failure.get());
+            return rejection;
+        }
+        if (limiter == null) {
+            return onCallbackExecutor(withinDeadline(send(statement), deadline, failure));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<ResultSet> result;
+        try {
+            result = withinDeadline(send(statement), deadline, failure);
+        } catch (RuntimeException e) {
+            limiter.release(System.nanoTime() - start, true);
+            throw e;
+        }
+        result.whenComplete((rows, error) -> limiter.release(System.nanoTime() - start, error != null));
+        return onCallbackExecutor(result);
+    }
+
+    private boolean admit(Deadline deadline, boolean waitForPermit) {
+        return waitForPermit ? limiter.acquire(deadline) : limiter.tryAcquire();
+    }
+
+    /**
+     * Cancels the query when the returned future is completed first, as it is when the deadline passes.
+     */
+    private CompletableFuture<ResultSet> send(Statement statement) {
+        ResultSetFuture query = session.executeAsync(statement);
+        CompletableFuture<ResultSet> result = CompletableFutures.from(query);
+        result.whenComplete((rows, error) -> query.cancel(true));
+        return result;
+    }
+
+    /**
+     * Fails the future with the exception from {@code failure} if it is still incomplete when the deadline passes.
+     */
+    private <T> CompletableFuture<T> withinDeadline(CompletableFuture<T> future, Deadline deadline,
+                                                    Supplier<? extends RuntimeException> failure) {
+        if (deadline == null || future.isDone()) {
+            return future;
+        }
+        ScheduledFuture<?> timeout = deadlineScheduler.schedule(() -> future.completeExceptionally(failure.get()),
+                Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        future.whenComplete((value, error) -> timeout.cancel(false));
+        return future;
+    }
+
+    /**
+     * Completes the future's dependents on the callback executor, whichever thread completed it.
+     */
+    private <T> CompletableFuture<T> onCallbackExecutor(CompletableFuture<T> future) {
+        if (callbackExecutor == CompletableFutures.SAME_THREAD || future.isDone()) {
+            return future;
+        }
+        return future.whenCompleteAsync((value, error) -> {
+        }, callbackExecutor);
+    }
+
+    /**
+     * Gives the statement a retry policy that stops retrying once the deadline has passed, so retries never
+     * outlast the caller's budget; waiting for the statement is bounded by the deadline separately.
+     *
+     * @return false if the deadline has already passed; a null deadline leaves the statement as it is.
+     */
+    private boolean bound(Statement statement, Deadline deadline) {
+        if (deadline == null) {
+            return true;
+        }
+        if (deadline.remaining(TimeUnit.MILLISECONDS) <= 0) {
+            return false;
+        }
+        statement.setRetryPolicy(new LoggingRetryPolicy(new RetryReads(deadline)));
+        return true;
+    }
+
+    /**
+     * Marked idempotent, which is what lets the speculative execution policy send it to a second host.
+     */
+    private BoundStatement bindLookup(String firstName) {
+        BoundStatement bound = statements.get(PersonQuery.RETRIEVE_BY_NAME).bind(firstName);
+        bound.setIdempotent(true);
+        return bound;
+    }
+
+    /**
+     * Binds by index with the dates serialized by {@link TimestampListCodec}, skipping the driver's Date boxing
+     * and per-element buffers.
+     */
+    private BoundStatement bindStore(Person person) {
+        BoundStatement bound = statements.get(PersonQuery.STORE).bind();
+        bound.setString(0, person.getName());
+        bound.setInt(1, person.getAge());
+        bound.setBytesUnsafe(2, TimestampListCodec.encode(person.interestingDateMillis(), protocolVersion));
+        return bound;
+    }
+
+    private Statement fullScan() {
+        Statement statement = statements.get(PersonQuery.RETRIEVE_ALL).bind();
+        statement.setConsistencyLevel(ConsistencyLevel.QUORUM);
+        return statement;
+    }
+
+    /**
+     * Walks a paged result set. The driver fetches the next page from within hasNext(), so a read timeout
+     * part way through a scan is translated here rather than escaping to the stream consumer.
+     */
+    private static class PagedRows implements Iterator<Row> {
+        private final Iterator<Row> rows;
+
+        private PagedRows(Iterator<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return rows.hasNext();
+            } catch (ReadTimeoutException e) {
+                throw new UnableToRetrievePeopleException();
+            }
+        }
+
+        @Override
+        public Row next() {
+            try {
+                return rows.next();
+            } catch (ReadTimeoutException e) {
+                throw new UnableToRetrievePeopleException();
+            }
+        }
+    }
+
+    private class AsyncView implements AsyncPersonDao {
+        @Override
+        public CompletableFuture<List<Person>> retrievePeople() {
+            Deadline deadline = scanDeadline();
+            CompletableFuture<List<Person>> people = executeAsync(fullScan(), deadline, UnableToRetrievePeopleException::new)
+                    .thenCompose(result -> PagedResults.collect(result, new ArrayList<>(), PersonRowMapper.SUMMARY,
+                            callbackExecutor, deadline, UnableToRetrievePeopleException::new));
+            people = withinDeadline(people, deadline, UnableToRetrievePeopleException::new);
+            return CompletableFutures.translating(people, ReadTimeoutException.class, UnableToRetrievePeopleException::new);
+        }
+
+        @Override
+        public CompletableFuture<List<Person>> retrievePeopleByName(String firstName) {
+            return lookupAsync(firstName, false);
+        }
+
+        @Override
+        public CompletableFuture<Void> storePerson(Person person) {
+            return storeAsync(person, false);
+        }
+    }
+
+    private CompletableFuture<List<Person>> lookupAsync(String firstName, boolean waitForPermit) {
+        Deadline deadline = Deadline.after(retrieveByNameTimeoutMillis, TimeUnit.MILLISECONDS);
+        CompletableFuture<ResultSet> lookup = executeAsync(bindLookup(firstName), deadline, waitForPermit,
+                UnableToRetrievePeopleException::new);
+        return lookup.thenCompose(result -> PagedResults.collect(result, new ArrayList<>(), personMapper,
+                callbackExecutor, deadline, UnableToRetrievePeopleException::new));
+    }
+
+    private CompletableFuture<Void> storeAsync(Person person, boolean waitForPermit) {
+        Deadline deadline = Deadline.after(storeTimeoutMillis, TimeUnit.MILLISECONDS);
+        CompletableFuture<Void> stored = executeAsync(bindStore(person), deadline, waitForPermit,
+                UnableToSavePersonException::new).thenApply(result -> null);
+        return CompletableFutures.translating(stored, NoHostAvailableException.class, UnableToSavePersonException::new);
+    }
+
+    /**
+     * Writes each person as it is passed on, for coalescing without write-behind. Up to maxInFlightWrites writes
+     * are in flight at once, so the coalescing thread is not held up by any one round trip; failures are logged
+     * and counted.
+     */
+    private class DirectWriter implements PersonWriter {
+
+        private final int maxInFlight = maxInFlightWrites;
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final AtomicLong failed = new AtomicLong();
+
+        @Override
+        public void write(Person person) {
+            permits.acquireUninterruptibly();
+            CompletableFuture<Void> write;
+            try {
+                write = storeAsync(person, true);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            write.whenComplete((stored, error) -> {
+                if (error != null) {
+                    failed.incrementAndGet();
+                    LOGGER.warn("Unable to write coalesced person {}", person.getName(), CompletableFutures.unwrap(error));
+                }
+                permits.release();
+            });
+        }
+
+        @Override
+        public void flush() {
+            // every permit is back once the last write has completed
+            permits.acquireUninterruptibly(maxInFlight);
+            permits.release(maxInFlight);
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+
+        long getFailedCount() {
+            return failed.get();
+        }
+    }
+
+    /**
+     * Retries timed out reads at ONE up to the configured number of times. With a deadline it rethrows instead
+     * once the deadline has passed.
+     */
     private class RetryReads implements RetryPolicy {
+
+        private final Deadline deadline;
+
+        RetryReads(Deadline deadline) {
+            this.deadline = deadline;
+        }
+
         @Override
         public RetryDecision onReadTimeout(Statement statement, ConsistencyLevel cl, int requiredResponses, int receivedResponses, boolean dataRetrieved, int nbRetry) {
-            if (nbRetry < retries) {
+            if (nbRetry < retries && hasTimeLeft()) {
                 return RetryDecision.retry(ConsistencyLevel.ONE);
             } else {
                 return RetryDecision.rethrow();
@@ -100,12 +1235,25 @@ public class PersonDaoCassandra implements PersonDao {
 
         @Override
         public RetryDecision onWriteTimeout(Statement statement, ConsistencyLevel cl, WriteType writeType, int requiredAcks, int receivedAcks, int nbRetry) {
-            return DefaultRetryPolicy.INSTANCE.onWriteTimeout(statement, cl, writeType, receivedAcks, receivedAcks, nbRetry);
+            RetryDecision decision = DefaultRetryPolicy.INSTANCE.onWriteTimeout(statement, cl, writeType, receivedAcks, receivedAcks, nbRetry);
+            return unlessExpired(decision);
         }
 
         @Override
         public RetryDecision onUnavailable(Statement statement, ConsistencyLevel cl, int requiredReplica, int aliveReplica, int nbRetry) {
-            return DefaultRetryPolicy.INSTANCE.onUnavailable(statement, cl, requiredReplica, aliveReplica, nbRetry);
+            RetryDecision decision = DefaultRetryPolicy.INSTANCE.onUnavailable(statement, cl, requiredReplica, aliveReplica, nbRetry);
+            return unlessExpired(decision);
+        }
+
+        private RetryDecision unlessExpired(RetryDecision decision) {
+            if (decision.getType() == RetryDecision.Type.RETRY && !hasTimeLeft()) {
+                return RetryDecision.rethrow();
+            }
+            return decision;
+        }
+
+        private boolean hasTimeLeft() {
+            return deadline == null || deadline.remaining(TimeUnit.MILLISECONDS) > 0;
         }
     }
 }
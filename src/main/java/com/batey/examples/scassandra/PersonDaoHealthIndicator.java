@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+/**
+ * Reports the DAO OUT_OF_SERVICE until {@link PersonDaoCassandra#warmUp()} has completed, so a load balancer
+ * polling the actuator health endpoint only sends traffic to an instance once it is warm.
+ */
+public class PersonDaoHealthIndicator extends AbstractHealthIndicator {
+
+    private final PersonDaoCassandra dao;
+
+    public PersonDaoHealthIndicator(PersonDaoCassandra dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        if (dao.isWarm()) {
+            builder.up();
+        } else {
+            builder.outOfService().withDetail("reason", "warming up");
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bulk imports people from a file into a {@link PersonDao}. The file is memory-mapped and cut at line boundaries
+ * into slices that are parsed on separate threads, each handing batches of parsed people to
+ * {@link PersonDao#storePeople(java.util.Collection)}.
+ * <p>
+ * Two line formats are understood, with interesting dates given as epoch millis:
+ * <ul>
+ * <li>{@link Format#CSV}: {@code name,age,date|date|...}, optionally preceded by a
+ * {@code name,age,interesting_dates} header. The name is everything before the last two commas.</li>
+ * <li>{@link Format#JSON_LINES}: {@code {"name":"...","age":29,"interesting_dates":[...]}} per line.</li>
+ * </ul>
+ */
+public class PersonFileLoader {
+
+    public enum Format {
+        CSV, JSON_LINES
+    }
+
+    private static final String CSV_HEADER = "name,age,interesting_dates";
+    private static final long MAX_SLICE_BYTES = Integer.MAX_VALUE;
+    private static final int BOUNDARY_SEARCH_BYTES = 8192;
+
+    private final PersonDao dao;
+    private final int parallelism;
+    private final int batchSize;
+    private final ObjectMapper json = new ObjectMapper();
+
+    public PersonFileLoader(PersonDao dao, int parallelism, int batchSize) {
+        this.dao = dao;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public Result load(Path file, Format format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> slices = slice(channel);
+            ExecutorService parsers = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, slices.size())));
+            try {
+                List<Future<Result>> parsed = new ArrayList<>();
+                for (long[] slice : slices) {
+                    MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, slice[0], slice[1] - slice[0]);
+                    parsed.add(parsers.submit(() -> loadSlice(bytes, format, slice[0] == 0)));
+                }
+                Result total = new Result();
+                for (Future<Result> result : parsed) {
+                    total.add(result.get());
+                }
+                return total;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted loading " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("Unable to load " + file, e.getCause());
+            } finally {
+                parsers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Splits the file into roughly equal [start, end) ranges, each ending just after a newline (or at the end of
+     * the file) and none larger than a single mapping allows.
+     */
+    List<long[]> slice(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long sliceCount = Math.max(parallelism, (size + MAX_SLICE_BYTES - 1) / MAX_SLICE_BYTES);
+        List<long[]> slices = new ArrayList<>();
+        long start = 0;
+        for (long i = 1; i <= sliceCount && start < size; i++) {
+            long end = i == sliceCount ? size : Math.max(start, nextLineStart(channel, size * i / sliceCount, size));
+            if (end > start) {
+                slices.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        return slices;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_SEARCH_BYTES);
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private Result loadSlice(ByteBuffer bytes, Format format, boolean startOfFile) {
+        Result result = new Result();
+        List<Person> batch = new ArrayList<>(batchSize);
+        byte[] line = new byte[256];
+        boolean firstLine = startOfFile;
+        int lineStart = 0;
+        int limit = bytes.limit();
+        for (int position = 0; position <= limit; position++) {
+            if (position < limit && bytes.get(position) != '\n') {
+                continue;
+            }
+            int length = position - lineStart;
+            if (length > 0 && bytes.get(lineStart + length - 1) == '\r') {
+                length--;
+            }
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                line[i] = bytes.get(lineStart + i);
+            }
+            String text = new String(line, 0, length, StandardCharsets.UTF_8).trim();
+            lineStart = position + 1;
+
+            boolean header = firstLine && format == Format.CSV && text.equalsIgnoreCase(CSV_HEADER);
+            firstLine = false;
+            if (text.isEmpty() || header) {
+                continue;
+            }
+            batch.add(format == Format.CSV ? parseCsv(text) : parseJson(text));
+            if (batch.size() == batchSize) {
+                store(batch, result);
+            }
+        }
+        if (!batch.isEmpty()) {
+            store(batch, result);
+        }
+        return result;
+    }
+
+    private void store(List<Person> batch, Result result) {
+        result.people += batch.size();
+        result.failures.addAll(dao.storePeople(new ArrayList<>(batch)));
+        batch.clear();
+    }
+
+    static Person parseCsv(String line) {
+        int datesSeparator = line.lastIndexOf(',');
+        int ageSeparator = datesSeparator < 0 ? -1 : line.lastIndexOf(',', datesSeparator - 1);
+        if (ageSeparator < 0) {
+            throw new IllegalArgumentException("Expected name,age,interesting_dates but was: " + line);
+        }
+        String name = line.substring(0, ageSeparator);
+        int age = Integer.parseInt(line.substring(ageSeparator + 1, datesSeparator).trim());
+        String dates = line.substring(datesSeparator + 1).trim();
+        if (dates.isEmpty()) {
+            return Person.ofMillis(name, age, TimestampListCodec.EMPTY);
+        }
+        String[] values = dates.split("\\|");
+        long[] millis = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            millis[i] = Long.parseLong(values[i].trim());
+        }
+        return Person.ofMillis(name, age, millis);
+    }
+
+    private Person parseJson(String line) {
+        JsonNode node;
+        try {
+            node = json.readTree(line);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed person record: " + line, e);
+        }
+        JsonNode dates = node.path("interesting_dates");
+        long[] millis = new long[dates.size()];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = dates.get(i).asLong();
+        }
+        return Person.ofMillis(node.path("name").asText(), node.path("age").asInt(), millis);
+    }
+
+    public static class Result {
+        private long people;
+        private final List<StoreFailure> failures = Collections.synchronizedList(new ArrayList<>());
+
+        private void add(Result other) {
+            people += other.people;
+            failures.addAll(other.failures);
+        }
+
+        /**
+         * @return the number of people read from the file, whether or not they could be stored.
+         */
+        public long getPeople() {
+            return people;
+        }
+
+        public List<StoreFailure> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * Usage: PersonFileLoader &lt;file&gt; [port]. Files ending in .json or .jsonl are read as JSON lines,
+     * anything else as CSV.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PersonFileLoader <file> [port]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9042;
+        String fileName = file.getFileName().toString();
+        Format format = fileName.endsWith(".json") || fileName.endsWith(".jsonl") ? Format.JSON_LINES : Format.CSV;
+
+        PersonDaoCassandra dao = new PersonDaoCassandra(port, 1);
+        dao.connect();
+        try {
+            Result result = new PersonFileLoader(dao, Runtime.getRuntime().availableProcessors(), 500).load(file, format);
+            System.out.println("Loaded " + (result.getPeople() - result.getFailures().size()) + " of "
+                    + result.getPeople() + " people from " + file);
+        } finally {
+            dao.disconnect();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of stored people in memory-mapped segment files, read back in order by a single replayer.
+ * <p>
+ * Each record is {@code length, crc32, payload}; the length is written last, so a zero length marks the end of a
+ * segment and a record torn by a crash fails its checksum and ends the segment too. Segments are deleted once
+ * everything in them has been committed.
+ * <p>
+ * The committed position is kept in a checkpoint file, forced to disk under the same policy as the records, so a
+ * reopened journal resumes after the last commit. Replaying people Cassandra already has would write them again with
+ * fresh timestamps and could overwrite newer writes made since. Without a valid checkpoint the leftover segments
+ * are replayed from the start.
+ */
+class PersonJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersonJournal.class);
+    private static final String SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    private static final int CHECKPOINT_BYTES = 16;
+
+    private final File directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private int readOffset;
+    private boolean dirty;
+    private boolean checkpointDirty;
+
+    PersonJournal(File directory, int segmentSize, FsyncPolicy fsyncPolicy) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory.toPath());
+
+        File[] existing = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        long[] sequences = new long[existing == null ? 0 : existing.length];
+        for (int i = 0; i < sequences.length; i++) {
+            String name = existing[i].getName();
+            sequences[i] = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        }
+        Arrays.sort(sequences);
+
+        checkpointChannel = FileChannel.open(new File(directory, CHECKPOINT).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_BYTES);
+        Position committed = readCheckpoint();
+        for (long sequence : sequences) {
+            if (committed != null && sequence < committed.sequence) {
+                // fully committed, but not yet deleted when the journal was last closed
+                Files.deleteIfExists(path(sequence));
+                continue;
+            }
+            segments.add(Segment.open(path(sequence), sequence, segmentSize));
+        }
+        if (committed != null && !segments.isEmpty() && segments.getFirst().sequence == committed.sequence) {
+            readOffset = committed.offset;
+        }
+        // earlier segments are only read; new records always start a fresh segment
+        long sequence = segments.isEmpty() ? 0 : segments.getLast().sequence + 1;
+        segments.add(Segment.open(path(sequence), sequence, segmentSize));
+    }
+
+    synchronized void append(Person person) {
+        byte[] name = person.getName().getBytes(StandardCharsets.UTF_8);
+        long[] dates = person.interestingDateMillis();
+        int length = 2 + name.length + 4 + 4 + (dates == null ? 0 : dates.length * 8);
+        if (name.length > 0xffff || HEADER_BYTES + length + 4 > segmentSize) {
+            throw new UnableToSavePersonException(new IOException("Person does not fit in a journal segment"));
+        }
+
+        MappedByteBuffer buffer = segments.getLast().buffer;
+        // the trailing 4 bytes keep room for the zero length that ends the segment
+        if (buffer.remaining() < HEADER_BYTES + length + 4) {
+            roll();
+            buffer = segments.getLast().buffer;
+        }
+        int start = buffer.position();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_BYTES);
+        payload.putShort((short) name.length).put(name).putInt(person.getAge());
+        if (dates == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(dates.length);
+            for (long date : dates) {
+                payload.putLong(date);
+            }
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = buffer.duplicate();
+        checked.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length);
+        crc.update(checked);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, length);
+        buffer.position(start + HEADER_BYTES + length);
+
+        dirty = true;
+        if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+            sync();
+        }
+    }
+
+    /**
+     * Reads up to {@code max} people from the last committed position without consuming them.
+     */
+    synchronized Batch read(int max) {
+        List<Person> people = new ArrayList<>();
+        Segment segment = null;
+        int offset = readOffset;
+        for (Segment next : segments) {
+            segment = next;
+            ByteBuffer buffer = next.buffer.duplicate();
+            buffer.limit(next == segments.getLast() ? next.buffer.position() : segmentSize);
+            buffer.position(offset);
+            while (people.size() < max) {
+                Person person = readRecord(next, buffer);
+                if (person == null) {
+                    break;
+                }
+                people.add(person);
+            }
+            if (people.size() == max || next == segments.getLast()) {
+                offset = buffer.position();
+                break;
+            }
+            offset = 0;
+        }
+        return new Batch(people, new Position(segment.sequence, offset));
+    }
+
+    /**
+     * Marks everything up to {@code position} as replayed, deleting segments that are no longer needed.
+     */
+    synchronized void commit(Position position) {
+        // checkpoint first: a crash in between must not leave a checkpoint older than the segments kept
+        writeCheckpoint(position);
+        while (segments.getFirst().sequence < position.sequence) {
+            segments.removeFirst().delete();
+        }
+        readOffset = position.offset;
+        if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+            sync();
+        }
+    }
+
+    /**
+     * The position just after the last appended person.
+     */
+    synchronized Position end() {
+        Segment last = segments.getLast();
+        return new Position(last.sequence, last.buffer.position());
+    }
+
+    /**
+     * Bytes appended but not yet committed, across all segments.
+     */
+    synchronized long getBacklogBytes() {
+        long backlog = -readOffset;
+        for (Segment segment : segments) {
+            backlog += segment == segments.getLast() ? segment.buffer.position() : segment.end();
+        }
+        return backlog;
+    }
+
+    /**
+     * Called by the replayer every sync interval; forces appended people to disk under {@link FsyncPolicy#INTERVAL}.
+     */
+    void periodicSync() {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            sync();
+        }
+    }
+
+    synchronized void sync() {
+        if (dirty) {
+            segments.getLast().buffer.force();
+            dirty = false;
+        }
+        if (checkpointDirty) {
+            checkpoint.force();
+            checkpointDirty = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            sync();
+        }
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        try {
+            checkpointChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close journal checkpoint in {}", directory, e);
+        }
+    }
+
+    private void roll() {
+        Segment full = segments.getLast();
+        full.end = full.buffer.position();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            full.buffer.force();
+        }
+        dirty = false;
+        long sequence = full.sequence + 1;
+        try {
+            segments.add(Segment.open(path(sequence), sequence, segmentSize));
+        } catch (IOException e) {
+            throw new UnableToSavePersonException(e);
+        }
+    }
+
+    /**
+     * Records {@code sequence, offset, crc32}; a checkpoint that fails its checksum was never written or was torn.
+     */
+    private void writeCheckpoint(Position position) {
+        checkpoint.putLong(0, position.sequence);
+        checkpoint.putInt(8, position.offset);
+        checkpoint.putInt(12, checkpointCrc());
+        checkpointDirty = true;
+    }
+
+    /**
+     * @return the last committed position, or null if there is no valid checkpoint.
+     */
+    private Position readCheckpoint() {
+        if (checkpoint.getInt(12) != checkpointCrc()) {
+            if (checkpoint.getInt(12) != 0) {
+                LOGGER.warn("Ignoring torn checkpoint in {}, replaying the journal from the start", directory);
+            }
+            return null;
+        }
+        return new Position(checkpoint.getLong(0), checkpoint.getInt(8));
+    }
+
+    private int checkpointCrc() {
+        ByteBuffer checked = checkpoint.duplicate();
+        checked.position(0).limit(12);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        return (int) crc.getValue();
+    }
+
+    private Path path(long sequence) {
+        return new File(directory, String.format("%019d%s", sequence, SUFFIX)).toPath();
+    }
+
+    /**
+     * Reads the record at the buffer's position, leaving the position untouched at the end of the segment.
+     */
+    private static Person readRecord(Segment segment, ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length <= 0 || length > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            LOGGER.warn("Ignoring torn record at {} in journal segment {}", start, segment.path);
+            return null;
+        }
+
+        byte[] name = new byte[payload.getShort() & 0xffff];
+        payload.get(name);
+        int age = payload.getInt();
+        int dateCount = payload.getInt();
+        long[] dates = null;
+        if (dateCount >= 0) {
+            dates = new long[dateCount];
+            for (int i = 0; i < dateCount; i++) {
+                dates[i] = payload.getLong();
+            }
+        }
+        buffer.position(start + HEADER_BYTES + length);
+        return Person.ofMillis(new String(name, StandardCharsets.UTF_8), age, dates);
+    }
+
+    /**
+     * A point in the journal: a segment and a byte offset within it.
+     */
+    static final class Position implements Comparable<Position> {
+        private final long sequence;
+        private final int offset;
+
+        Position(long sequence, int offset) {
+            this.sequence = sequence;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int bySegment = Long.compare(sequence, other.sequence);
+            return bySegment != 0 ? bySegment : Integer.compare(offset, other.offset);
+        }
+    }
+
+    static final class Batch {
+        private final List<Person> people;
+        private final Position end;
+
+        Batch(List<Person> people, Position end) {
+            this.people = people;
+            this.end = end;
+        }
+
+        List<Person> getPeople() {
+            return people;
+        }
+
+        Position getEnd() {
+            return end;
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long sequence;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int end = -1;
+
+        private Segment(Path path, long sequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long sequence, int segmentSize) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, sequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+
+        /**
+         * Where the records of a segment that is no longer written to end; found by reading them for segments left
+         * over from a previous run.
+         */
+        int end() {
+            if (end < 0) {
+                ByteBuffer records = buffer.duplicate();
+                records.clear();
+                while (readRecord(this, records) != null) {
+                    // skip
+                }
+                end = records.position();
+            }
+            return end;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close journal segment {}", path, e);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete journal segment {}", path, e);
+            }
+        }
+    }
+}
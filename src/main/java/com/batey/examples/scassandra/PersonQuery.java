@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+/**
+ * Every CQL statement the DAO issues. All of them are prepared through {@link PreparedStatements}.
+ */
+enum PersonQuery {
+    STORE("insert into person(name, age, interesting_dates) values (?,?,?)"),
+    RETRIEVE_BY_NAME("select * from person where name = ?"),
+    RETRIEVE_ALL("select * from person"),
+    RETRIEVE_TOKEN_RANGE("select * from person where token(name) > ? and token(name) <= ?");
+
+    private final String cql;
+
+    PersonQuery(String cql) {
+        this.cql = cql;
+    }
+
+    String cql() {
+        return cql;
+    }
+}
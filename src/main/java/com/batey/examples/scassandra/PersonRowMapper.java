@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.Row;
+
+import java.util.function.Function;
+
+/**
+ * Maps rows to {@link Person} by column index rather than by name. Looking a column up by name costs a
+ * case-insensitive search of the row's ColumnDefinitions for every column of every row; here the indices are
+ * resolved once per ColumnDefinitions instance, which the driver shares between all rows of a result set and,
+ * for prepared statements, between every execution. Interesting dates are decoded with
+ * {@link TimestampListCodec} into a single long[].
+ */
+final class PersonRowMapper implements Function<Row, Person> {
+
+    /** Rows of the full scan mapped to name and age only, skipping the interesting dates. */
+    static final PersonRowMapper SUMMARY = new PersonRowMapper("name", "age", null, null);
+
+    private final String nameColumn;
+    private final String ageColumn;
+    private final String datesColumn;
+    private final ProtocolVersion protocolVersion;
+    private volatile Columns columns;
+
+    private PersonRowMapper(String nameColumn, String ageColumn, String datesColumn, ProtocolVersion protocolVersion) {
+        this.nameColumn = nameColumn;
+        this.ageColumn = ageColumn;
+        this.datesColumn = datesColumn;
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * Mapper for rows of the person table, whether from the by-name lookup or the full scan: name, age and
+     * interesting dates serialized with the given protocol version.
+     */
+    static PersonRowMapper full(ProtocolVersion protocolVersion) {
+        return new PersonRowMapper("name", "age", "interesting_dates", protocolVersion);
+    }
+
+    @Override
+    public Person apply(Row row) {
+        Columns resolved = resolve(row.getColumnDefinitions());
+        long[] dates = resolved.dates < 0
+                ? TimestampListCodec.EMPTY
+                : TimestampListCodec.decode(row.getBytesUnsafe(resolved.dates), protocolVersion);
+        return Person.ofMillis(row.getString(resolved.name), row.getInt(resolved.age), dates);
+    }
+
+    private Columns resolve(ColumnDefinitions definitions) {
+        Columns resolved = columns;
+        if (resolved == null || resolved.definitions != definitions) {
+            resolved = new Columns(definitions,
+                    definitions.getIndexOf(nameColumn),
+                    definitions.getIndexOf(ageColumn),
+                    datesColumn == null ? -1 : definitions.getIndexOf(datesColumn));
+            columns = resolved;
+        }
+        return resolved;
+    }
+
+    private static class Columns {
+        private final ColumnDefinitions definitions;
+        private final int name;
+        private final int age;
+        private final int dates;
+
+        private Columns(ColumnDefinitions definitions, int name, int age, int dates) {
+            this.definitions = definitions;
+            this.name = name;
+            this.age = age;
+            this.dates = dates;
+        }
+    }
+}
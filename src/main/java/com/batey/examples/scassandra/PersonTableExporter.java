@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exports the whole person table to a {@link ColumnarPersonWriter columnar file}. The table is read with
+ * {@link PersonDao#streamPeopleWithDates(int)}, so memory use is bounded by one page of rows plus one block of the
+ * file, whatever the size of the table.
+ */
+public class PersonTableExporter {
+
+    private final PersonDao dao;
+    private final int fetchSize;
+    private final int rowsPerBlock;
+
+    public PersonTableExporter(PersonDao dao, int fetchSize, int rowsPerBlock) {
+        this.dao = dao;
+        this.fetchSize = fetchSize;
+        this.rowsPerBlock = rowsPerBlock;
+    }
+
+    /**
+     * @return the number of people exported.
+     */
+    public long export(Path file) throws IOException {
+        long exported = 0;
+        try (Stream<Person> people = dao.streamPeopleWithDates(fetchSize);
+             ColumnarPersonWriter writer = new ColumnarPersonWriter(file, rowsPerBlock)) {
+            for (Iterator<Person> it = people.iterator(); it.hasNext(); exported++) {
+                writer.write(it.next());
+            }
+        }
+        return exported;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+/**
+ * Where {@link PersonDaoCassandra#storePerson(Person)} sends people when it does not write them synchronously.
+ */
+interface PersonWriter {
+
+    /**
+     * Accepts the person for writing; it may not have reached Cassandra when this returns.
+     */
+    void write(Person person);
+
+    /**
+     * Blocks until everything accepted before the call has been written or has failed.
+     */
+    void flush();
+
+    /**
+     * Stops accepting writes and flushes what was already accepted.
+     */
+    void close();
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prepares each {@link PersonQuery} once per session and hands out the same PreparedStatement afterwards.
+ * Because the instances are kept for the lifetime of the session, the driver re-prepares them by itself when
+ * a node comes back up or answers UNPREPARED, so callers never see the difference.
+ */
+class PreparedStatements {
+
+    private final Session session;
+    private final Map<PersonQuery, PreparedStatement> prepared = new ConcurrentHashMap<>();
+
+    PreparedStatements(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Prepares the queries not prepared yet concurrently, returning once all of them are prepared; connecting then
+     * costs one prepare round trip rather than one per query.
+     *
+     * @return how many of the queries had to be prepared.
+     */
+    int prepare(PersonQuery... queries) {
+        Map<PersonQuery, CompletableFuture<PreparedStatement>> pending = new EnumMap<>(PersonQuery.class);
+        for (PersonQuery query : queries) {
+            if (!prepared.containsKey(query) && !pending.containsKey(query)) {
+                pending.put(query, CompletableFutures.from(session.prepareAsync(query.cql())));
+            }
+        }
+        for (Map.Entry<PersonQuery, CompletableFuture<PreparedStatement>> statement : pending.entrySet()) {
+            prepared.put(statement.getKey(), CompletableFutures.join(statement.getValue()));
+        }
+        return pending.size();
+    }
+
+    /**
+     * Whether these statements were prepared on the given session, and so can be used with it.
+     */
+    boolean belongTo(Session session) {
+        return this.session == session;
+    }
+
+    /**
+     * @return the statement for the query, preparing it on first use if it was not prepared up front.
+     */
+    PreparedStatement get(PersonQuery query) {
+        return prepared.computeIfAbsent(query, q -> session.prepare(q.cql()));
+    }
+}
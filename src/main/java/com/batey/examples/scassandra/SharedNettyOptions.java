@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.NettyOptions;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Hands every Cluster in the process with the same transport and thread count the same event loop group, instead
+ * of each creating, and on close tearing down, its own set of I/O threads. A group is created with the first
+ * cluster that asks for it and lives as long as the process; its threads are daemons so they never hold up
+ * shutdown.
+ * <p>
+ * The native epoll transport avoids NIO's selector overhead and garbage on Linux. It is used when asked for and
+ * Netty can load it, otherwise NIO is used with a warning.
+ */
+final class SharedNettyOptions extends NettyOptions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedNettyOptions.class);
+    private static final Map<String, SharedNettyOptions> INSTANCES = new ConcurrentHashMap<>();
+
+    private final boolean epoll;
+    private final int threads;
+    private EventLoopGroup eventLoopGroup;
+
+    private SharedNettyOptions(boolean epoll, int threads) {
+        this.epoll = epoll;
+        this.threads = threads;
+    }
+
+    /**
+     * @param epoll   whether to use the native epoll transport if it is available.
+     * @param threads I/O threads in the group; 0 lets Netty pick its default of two per core.
+     */
+    static SharedNettyOptions get(boolean epoll, int threads) {
+        boolean useEpoll = epoll && epollAvailable();
+        return INSTANCES.computeIfAbsent((useEpoll ? "epoll-" : "nio-") + threads,
+                key -> new SharedNettyOptions(useEpoll, threads));
+    }
+
+    boolean isEpoll() {
+        return epoll;
+    }
+
+    @Override
+    public synchronized EventLoopGroup eventLoopGroup(ThreadFactory threadFactory) {
+        if (eventLoopGroup == null) {
+            String prefix = epoll ? "person-dao-epoll-" : "person-dao-nio-";
+            ThreadFactory daemons = runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName(prefix + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            };
+            eventLoopGroup = epoll ? new EpollEventLoopGroup(threads, daemons) : new NioEventLoopGroup(threads, daemons);
+        }
+        return eventLoopGroup;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    @Override
+    public void onClusterClose(EventLoopGroup eventLoopGroup) {
+        // shared with the other clusters, so left running
+    }
+
+    private static boolean epollAvailable() {
+        try {
+            if (Epoll.isAvailable()) {
+                return true;
+            }
+            LOGGER.warn("Native epoll transport unavailable, using NIO", Epoll.unavailabilityCause());
+        } catch (LinkageError e) {
+            LOGGER.warn("Native epoll transport not on the classpath, using NIO", e);
+        }
+        return false;
+    }
+}
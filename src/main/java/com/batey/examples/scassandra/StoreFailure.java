@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+/**
+ * A person a bulk store could not write, and why.
+ */
+public class StoreFailure {
+    private final Person person;
+    private final Throwable cause;
+
+    public StoreFailure(Person person, Throwable cause) {
+        this.person = person;
+        this.cause = cause;
+    }
+
+    public Person getPerson() {
+        return person;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ProtocolVersion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a serialized CQL {@code list<timestamp>} straight to and from epoch millis. The driver's own codec
+ * boxes every element into a Date inside a fresh List when reading, and serializes each Date into its own buffer
+ * before copying them together when writing; this allocates a single long[] or a single exactly sized ByteBuffer
+ * instead. Driver 2.x has no pluggable codecs, so it works on the raw bytes of {@code Row.getBytesUnsafe} and
+ * {@code BoundStatement.setBytesUnsafe}.
+ * <p>
+ * Protocol versions 1 and 2 prefix the collection and each element with an unsigned short, later versions with
+ * an int.
+ */
+final class TimestampListCodec {
+
+    static final long[] EMPTY = new long[0];
+
+    private static final int TIMESTAMP_SIZE = 8;
+
+    private TimestampListCodec() {
+    }
+
+    static long[] decode(ByteBuffer bytes, ProtocolVersion version) {
+        if (bytes == null || bytes.remaining() == 0) {
+            return EMPTY;
+        }
+        boolean shortSizes = usesShortSizes(version);
+        int position = bytes.position();
+        int size = readSize(bytes, position, shortSizes);
+        position += shortSizes ? 2 : 4;
+
+        long[] millis = new long[size];
+        for (int i = 0; i < size; i++) {
+            int length = readSize(bytes, position, shortSizes);
+            position += shortSizes ? 2 : 4;
+            if (length != TIMESTAMP_SIZE) {
+                throw new IllegalArgumentException("Expected 8 byte timestamp but element " + i + " has " + length + " bytes");
+            }
+            millis[i] = bytes.getLong(position);
+            position += TIMESTAMP_SIZE;
+        }
+        return millis;
+    }
+
+    /**
+     * @return the serialized list, or null for no dates so the column is written as null.
+     */
+    static ByteBuffer encode(long[] millis, ProtocolVersion version) {
+        if (millis == null) {
+            return null;
+        }
+        boolean shortSizes = usesShortSizes(version);
+        int sizeBytes = shortSizes ? 2 : 4;
+        ByteBuffer bytes = ByteBuffer.allocate(sizeBytes + millis.length * (sizeBytes + TIMESTAMP_SIZE));
+        writeSize(bytes, millis.length, shortSizes);
+        for (long date : millis) {
+            writeSize(bytes, TIMESTAMP_SIZE, shortSizes);
+            bytes.putLong(date);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private static boolean usesShortSizes(ProtocolVersion version) {
+        return version == ProtocolVersion.V1 || version == ProtocolVersion.V2;
+    }
+
+    private static int readSize(ByteBuffer bytes, int position, boolean shortSize) {
+        return shortSize ? bytes.getShort(position) & 0xFFFF : bytes.getInt(position);
+    }
+
+    private static void writeSize(ByteBuffer bytes, int size, boolean shortSize) {
+        if (shortSize) {
+            if (size > 0xFFFF) {
+                throw new IllegalArgumentException("Protocol versions 1 and 2 allow at most 65535 elements, got " + size);
+            }
+            bytes.putShort((short) size);
+        } else {
+            bytes.putInt(size);
+        }
+    }
+}
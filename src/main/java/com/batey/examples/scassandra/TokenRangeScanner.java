@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Full table scan split into token sub-ranges that are queried concurrently, so each replica serves its own
+ * slice of the ring rather than one coordinator walking the whole table.
+ */
+class TokenRangeScanner {
+
+    private final Session session;
+    private final Supplier<PreparedStatement> rangeStatement;
+    private final int splits;
+    private final int maxConcurrentScans;
+
+    /**
+     * @param rangeStatement supplies the range query when a scan starts, so it may be prepared on first use.
+     */
+    TokenRangeScanner(Session session, Supplier<PreparedStatement> rangeStatement, int splits, int maxConcurrentScans) {
+        this.session = session;
+        this.rangeStatement = rangeStatement;
+        this.splits = splits;
+        this.maxConcurrentScans = maxConcurrentScans;
+    }
+
+    /**
+     * Splits the ring into about as many ranges as configured: with fewer ring ranges than splits each is divided
+     * evenly, with more, as with vnodes, neighbouring ranges are merged.
+     *
+     * @return the ranges to scan, empty when the cluster has not reported any token ownership.
+     */
+    List<TokenRange> split(Set<TokenRange> ring) {
+        List<TokenRange> ranges = new ArrayList<>();
+        if (ring.isEmpty()) {
+            return ranges;
+        }
+        List<TokenRange> sorted = new ArrayList<>(ring);
+        Collections.sort(sorted);
+        if (sorted.size() >= splits) {
+            for (List<TokenRange> neighbours : contiguousGroups(sorted, splits)) {
+                TokenRange merged = neighbours.get(0);
+                for (TokenRange next : neighbours.subList(1, neighbours.size())) {
+                    merged = merged.mergeWith(next);
+                }
+                ranges.addAll(merged.unwrap());
+            }
+        } else {
+            int perRange = (splits + sorted.size() - 1) / sorted.size();
+            for (TokenRange range : sorted) {
+                for (TokenRange split : range.splitEvenly(perRange)) {
+                    ranges.addAll(split.unwrap());
+                }
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Cuts the items into {@code groups} runs of consecutive items whose sizes differ by at most one; there must
+     * be at least as many items as groups.
+     */
+    static <T> List<List<T>> contiguousGroups(List<T> items, int groups) {
+        List<List<T>> runs = new ArrayList<>(groups);
+        int from = 0;
+        for (int i = 1; i <= groups; i++) {
+            int to = (int) ((long) items.size() * i / groups);
+            runs.add(items.subList(from, to));
+            from = to;
+        }
+        return runs;
+    }
+
+    /**
+     * Fails with the first range's failure, cancelling the range queries still outstanding and sending no more;
+     * the same happens with an UnableToRetrievePeopleException if the deadline passes before every range is in.
+     *
+     * @param deadline bounds the whole scan; null waits for as long as the ranges take.
+     * @param beforeSend applied to each range statement before it is sent, to bound it by the caller's deadline.
+     */
+    <T> List<T> scan(List<TokenRange> ranges, Function<Row, T> mapper, Deadline deadline, Consumer<Statement> beforeSend) {
+        PreparedStatement statement = rangeStatement.get();
+        Semaphore permits = new Semaphore(maxConcurrentScans);
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        // stops ranges that are still paging from fetching further pages once another range has failed
+        Function<Row, T> unlessFailed = row -> {
+            if (firstFailure.isDone()) {
+                throw new CancellationException();
+            }
+            return mapper.apply(row);
+        };
+        List<ResultSetFuture> sent = new ArrayList<>(ranges.size());
+        List<CompletableFuture<List<T>>> scans = new ArrayList<>(ranges.size());
+        try {
+            for (TokenRange range : ranges) {
+                permits.acquireUninterruptibly();
+                if (firstFailure.isDone()) {
+                    permits.release();
+                    break;
+                }
+                BoundStatement bind = statement.bind()
+                        .setToken(0, range.getStart())
+                        .setToken(1, range.getEnd());
+                bind.setConsistencyLevel(ConsistencyLevel.QUORUM);
+                try {
+                    beforeSend.accept(bind);
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+                ResultSetFuture query = session.executeAsync(bind);
+                sent.add(query);
+                CompletableFuture<List<T>> scan = CompletableFutures.from(query)
+                        .thenCompose(result -> PagedResults.collect(result, new ArrayList<>(), unlessFailed,
+                                CompletableFutures.SAME_THREAD, deadline, UnableToRetrievePeopleException::new));
+                scan.whenComplete((rows, error) -> {
+                    permits.release();
+                    if (error != null) {
+                        firstFailure.completeExceptionally(CompletableFutures.unwrap(error));
+                    }
+                });
+                scans.add(scan);
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(scans.toArray(new CompletableFuture<?>[scans.size()]));
+            await(CompletableFuture.anyOf(all, firstFailure), deadline);
+        } catch (RuntimeException e) {
+            firstFailure.completeExceptionally(e);
+            for (ResultSetFuture query : sent) {
+                query.cancel(true);
+            }
+            throw failure(e);
+        }
+
+        List<T> merged = new ArrayList<>();
+        for (CompletableFuture<List<T>> scan : scans) {
+            merged.addAll(scan.join());
+        }
+        return merged;
+    }
+
+    private static void await(CompletableFuture<?> done, Deadline deadline) {
+        if (deadline == null) {
+            done.join();
+            return;
+        }
+        try {
+            done.get(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new UnableToRetrievePeopleException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToRetrievePeopleException(e);
+        }
+    }
+
+    /**
+     * Rethrows what a range query failed with as the synchronous scan would, timeouts translated and other driver
+     * exceptions as they are rather than wrapped in a CompletionException.
+     */
+    private static RuntimeException failure(RuntimeException e) {
+        Throwable cause = e instanceof CompletionException ? CompletableFutures.unwrap(e) : e;
+        if (cause instanceof ReadTimeoutException) {
+            return new UnableToRetrievePeopleException(cause);
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return e;
+    }
+}
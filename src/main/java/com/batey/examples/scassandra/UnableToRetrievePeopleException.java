@@ -16,4 +16,10 @@
 package com.batey.examples.scassandra;
 
 public class UnableToRetrievePeopleException extends RuntimeException {
+    public UnableToRetrievePeopleException() {
+    }
+
+    public UnableToRetrievePeopleException(Throwable cause) {
+        super(cause);
+    }
 }
@@ -1,4 +1,10 @@
 package com.batey.examples.scassandra;
 
 public class UnableToSavePersonException extends RuntimeException {
+    public UnableToSavePersonException() {
+    }
+
+    public UnableToSavePersonException(Throwable cause) {
+        super(cause);
+    }
 }
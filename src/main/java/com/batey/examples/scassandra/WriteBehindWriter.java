@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Buffers stored people in a bounded queue and writes them from a background thread. The flusher waits until
+ * either {@code maxBatchSize} people are queued or {@code flushIntervalMillis} has passed since the first of them,
+ * then writes only the latest person queued under each name, the partitions concurrently. Writing the superseded
+ * people too, whether as separate inserts or in one batch sharing a write timestamp, could let an older one win.
+ * Producers block while the queue is full.
+ * <p>
+ * Failed writes are logged and counted; the producer has already been acknowledged.
+ */
+class WriteBehindWriter implements PersonWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    private final Session session;
+    private final Function<Person, Statement> insert;
+    private final BlockingQueue<Person> queue;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long completed;
+
+    WriteBehindWriter(Session session, Function<Person, Statement> insert, int capacity, int maxBatchSize,
+                      long flushIntervalMillis) {
+        this.session = session;
+        this.insert = insert;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.flusher = new Thread(this::run, "person-dao-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void write(Person person) {
+        if (!running) {
+            throw new UnableToSavePersonException();
+        }
+        try {
+            queue.put(person);
+            accepted.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToSavePersonException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        long target = accepted.get();
+        synchronized (this) {
+            while (completed < target && flusher.isAlive()) {
+                try {
+                    wait(flushIntervalNanos / 1_000_000 + 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // picks up anything a producer enqueued while the flusher was stopping
+        drain(new ArrayList<>(maxBatchSize));
+    }
+
+    long getQueuedCount() {
+        return queue.size();
+    }
+
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    private void run() {
+        List<Person> pending = new ArrayList<>(maxBatchSize);
+        try {
+            while (running) {
+                Person first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pending.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (pending.size() < maxBatchSize) {
+                    Person next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    pending.add(next);
+                }
+                writeAll(pending);
+                pending.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain(pending);
+    }
+
+    /**
+     * Writes everything still pending or queued, for when the flusher is stopping.
+     */
+    private void drain(List<Person> pending) {
+        do {
+            if (!pending.isEmpty()) {
+                writeAll(pending);
+                pending.clear();
+            }
+        } while (queue.drainTo(pending, maxBatchSize) > 0);
+    }
+
+    private void writeAll(List<Person> people) {
+        Map<String, Person> latest = new LinkedHashMap<>();
+        Map<String, Integer> queuedPerName = new HashMap<>();
+        for (Person person : people) {
+            latest.put(person.getName(), person);
+            queuedPerName.merge(person.getName(), 1, Integer::sum);
+        }
+
+        Map<ResultSetFuture, Integer> writes = new LinkedHashMap<>();
+        for (Person person : latest.values()) {
+            int queued = queuedPerName.get(person.getName());
+            try {
+                writes.put(session.executeAsync(insert.apply(person)), queued);
+            } catch (RuntimeException e) {
+                // e.g. a codec rejecting the person; the flusher must keep going for everyone else
+                failed.addAndGet(queued);
+                LOGGER.warn("Unable to write {} queued people", queued, e);
+            }
+        }
+        for (Map.Entry<ResultSetFuture, Integer> write : writes.entrySet()) {
+            try {
+                write.getKey().getUninterruptibly();
+            } catch (RuntimeException e) {
+                // the superseded people are lost along with the latest
+                failed.addAndGet(write.getValue());
+                LOGGER.warn("Unable to write {} queued people", write.getValue(), e);
+            }
+        }
+
+        synchronized (this) {
+            completed += people.size();
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void rejectsRequestsBeyondTheLimit() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 1, 10, 2.0);
+
+        //when
+        boolean first = underTest.tryAcquire();
+        boolean second = underTest.tryAcquire();
+        boolean third = underTest.tryAcquire();
+
+        //then
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertEquals(2, underTest.getInFlight());
+        assertEquals(1, underTest.getRejectedCount());
+    }
+
+    @Test
+    public void waitingAcquireGetsThePermitOnceOneIsReleased() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 10, 2.0);
+        underTest.tryAcquire();
+        Thread releaser = new Thread(() -> {
+            sleep(50);
+            underTest.release(1_000_000, false);
+        });
+        releaser.start();
+
+        //when
+        boolean acquired = underTest.acquire(Deadline.after(5, TimeUnit.SECONDS));
+
+        //then
+        releaser.join();
+        assertTrue(acquired);
+        assertEquals(1, underTest.getInFlight());
+        assertEquals(0, underTest.getRejectedCount());
+    }
+
+    @Test
+    public void waitingAcquireGivesUpAtTheDeadline() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(1, 1, 10, 2.0);
+        underTest.tryAcquire();
+
+        //when
+        boolean acquired = underTest.acquire(Deadline.after(20, TimeUnit.MILLISECONDS));
+
+        //then
+        assertFalse(acquired);
+        assertEquals(1, underTest.getRejectedCount());
+    }
+
+    @Test
+    public void growsWhileRoundTripsStayFast() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 1, 10, 2.0);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            int acquired = 0;
+            while (underTest.tryAcquire()) {
+                acquired++;
+            }
+            for (int j = 0; j < acquired; j++) {
+                underTest.release(1_000_000, false);
+            }
+        }
+
+        //then
+        assertEquals(10, underTest.getLimit());
+        assertEquals(0, underTest.getInFlight());
+    }
+
+    @Test
+    public void halvesOnFailure() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(8, 1, 10, 2.0);
+        underTest.tryAcquire();
+
+        //when
+        underTest.release(1_000_000, true);
+
+        //then
+        assertEquals(4, underTest.getLimit());
+    }
+
+    @Test
+    public void backsOffWhenRoundTripsExceedTheBaseline() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(10, 1, 10, 2.0);
+        underTest.tryAcquire();
+        underTest.release(1_000_000, false);
+
+        //when
+        underTest.tryAcquire();
+        underTest.release(5_000_000, false);
+
+        //then
+        assertEquals(9, underTest.getLimit());
+    }
+
+    @Test
+    public void neverDropsBelowTheMinimum() throws Exception {
+        // given
+        AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 2, 10, 2.0);
+        underTest.tryAcquire();
+
+        //when
+        underTest.release(1_000_000, true);
+
+        //then
+        assertEquals(2, underTest.getLimit());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
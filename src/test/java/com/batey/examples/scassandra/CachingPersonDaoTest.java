@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class CachingPersonDaoTest {
+
+    private static final List<Person> CHRIS = Arrays.asList(new Person("Chris", 29, Collections.emptyList()));
+    private static final List<Person> ANA = Arrays.asList(new Person("Ana", 31, Collections.emptyList()));
+
+    private final AtomicLong now = new AtomicLong();
+    private PersonDao delegate;
+    private CachingPersonDao underTest;
+
+    @Before
+    public void setup() {
+        delegate = mock(PersonDao.class);
+        when(delegate.retrievePeopleByName("Chris")).thenReturn(CHRIS);
+        when(delegate.retrievePeopleByName("Ana")).thenReturn(ANA);
+        underTest = new CachingPersonDao(delegate, 1, 10, TimeUnit.SECONDS, now::get);
+    }
+
+    @Test
+    public void testRepeatedLookupsAreServedFromCache() {
+        //when
+        underTest.retrievePeopleByName("Chris");
+        List<Person> people = underTest.retrievePeopleByName("Chris");
+
+        //then
+        assertEquals(CHRIS, people);
+        verify(delegate, times(1)).retrievePeopleByName("Chris");
+        assertEquals(1, underTest.getHitCount());
+        assertEquals(1, underTest.getMissCount());
+    }
+
+    @Test
+    public void testStorePersonReplacesCachedName() {
+        // given
+        underTest.retrievePeopleByName("Chris");
+        Person older = new Person("Chris", 30, Collections.emptyList());
+
+        //when
+        underTest.storePerson(older);
+        List<Person> people = underTest.retrievePeopleByName("Chris");
+
+        //then
+        verify(delegate).storePerson(older);
+        verify(delegate, times(1)).retrievePeopleByName("Chris");
+        assertEquals(Collections.singletonList(older), people);
+    }
+
+    @Test
+    public void testFailedStoreInvalidatesName() {
+        // given
+        underTest.retrievePeopleByName("Chris");
+        doThrow(new UnableToSavePersonException()).when(delegate).storePerson(CHRIS.get(0));
+
+        //when
+        try {
+            underTest.storePerson(CHRIS.get(0));
+            fail("Expected UnableToSavePersonException");
+        } catch (UnableToSavePersonException e) {
+            // expected
+        }
+        underTest.retrievePeopleByName("Chris");
+
+        //then
+        verify(delegate, times(2)).retrievePeopleByName("Chris");
+    }
+
+    @Test
+    public void testBulkLookupOnlyLoadsMissingNames() {
+        // given
+        underTest.retrievePeopleByName("Chris");
+        when(delegate.retrievePeopleByNames(Collections.singleton("Ana")))
+                .thenReturn(Collections.singletonMap("Ana", ANA));
+
+        //when
+        Map<String, List<Person>> people = underTest.retrievePeopleByNames(Arrays.asList("Chris", "Ana"));
+
+        //then
+        assertEquals(CHRIS, people.get("Chris"));
+        assertEquals(ANA, people.get("Ana"));
+        verify(delegate).retrievePeopleByNames(Collections.singleton("Ana"));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        // given
+        underTest.retrievePeopleByName("Chris");
+
+        //when
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        underTest.retrievePeopleByName("Chris");
+
+        //then
+        verify(delegate, times(2)).retrievePeopleByName("Chris");
+        assertEquals(1, underTest.getEvictionCount());
+    }
+
+    @Test
+    public void testInfrequentNameDoesNotDisplaceHotName() {
+        // given
+        underTest.retrievePeopleByName("Chris");
+        underTest.retrievePeopleByName("Chris");
+        underTest.retrievePeopleByName("Chris");
+
+        //when
+        underTest.retrievePeopleByName("Ana");
+        underTest.retrievePeopleByName("Chris");
+
+        //then
+        verify(delegate, times(1)).retrievePeopleByName("Chris");
+        assertEquals(0, underTest.getEvictionCount());
+        assertEquals(1, underTest.size());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingWriterTest {
+
+    private final CountDownLatch writeStarted = new CountDownLatch(1);
+    private final CountDownLatch finishWrite = new CountDownLatch(1);
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+    private final PersonWriter slowDelegate = new PersonWriter() {
+        @Override
+        public void write(Person person) {
+            writeStarted.countDown();
+            try {
+                finishWrite.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(person.getName());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    public void flushWaitsForAReleaseAlreadyUnderWay() throws Exception {
+        // given
+        CoalescingWriter underTest = new CoalescingWriter(slowDelegate, 1, 10);
+        underTest.write(Person.ofMillis("Chris", 29, new long[0]));
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        CountDownLatch flushed = new CountDownLatch(1);
+
+        //when
+        new Thread(() -> {
+            underTest.flush();
+            flushed.countDown();
+        }).start();
+
+        //then
+        assertFalse(flushed.await(100, TimeUnit.MILLISECONDS));
+        finishWrite.countDown();
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("Chris"), written);
+        underTest.close();
+    }
+
+    @Test
+    public void newNamesWaitWhileThePendingNamesAreAtCapacity() throws Exception {
+        // given
+        finishWrite.countDown();
+        CoalescingWriter underTest = new CoalescingWriter(slowDelegate, TimeUnit.MINUTES.toMillis(1), 1);
+        underTest.write(Person.ofMillis("Chris", 29, new long[0]));
+        underTest.write(Person.ofMillis("Chris", 30, new long[0]));
+        CountDownLatch accepted = new CountDownLatch(1);
+
+        //when
+        new Thread(() -> {
+            underTest.write(Person.ofMillis("Ana", 31, new long[0]));
+            accepted.countDown();
+        }).start();
+
+        //then
+        assertFalse(accepted.await(100, TimeUnit.MILLISECONDS));
+        underTest.flush();
+        assertTrue(accepted.await(5, TimeUnit.SECONDS));
+        underTest.close();
+        assertEquals(Arrays.asList("Chris", "Ana"), written);
+    }
+}
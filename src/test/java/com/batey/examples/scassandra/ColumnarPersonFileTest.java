@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarPersonFileTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Person> people = Arrays.asList(
+            Person.ofMillis("Chris", 29, new long[]{1420070400000L, 1422748800000L}),
+            Person.ofMillis("Ana", 31, new long[0]),
+            Person.ofMillis("Chris", 30, new long[]{1400000000000L}),
+            Person.ofMillis("Tom", 40, new long[]{-5L, 7L, 3L}),
+            Person.ofMillis("Ana", 32, new long[]{1420070400000L}));
+
+    @Test
+    public void testPeopleSurviveRoundTripAcrossBlocks() throws Exception {
+        // given
+        Path file = folder.newFile("people.pcol").toPath();
+
+        //when
+        try (ColumnarPersonWriter writer = new ColumnarPersonWriter(file, 2)) {
+            for (Person person : people) {
+                writer.write(person);
+            }
+        }
+
+        //then
+        assertSamePeople(people, readAll(file));
+    }
+
+    private static List<Person> readAll(Path file) throws Exception {
+        List<Person> read = new ArrayList<>();
+        try (ColumnarPersonReader reader = new ColumnarPersonReader(file)) {
+            for (Person person = reader.read(); person != null; person = reader.read()) {
+                read.add(person);
+            }
+        }
+        return read;
+    }
+
+    private static void assertSamePeople(List<Person> expected, List<Person> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getAge(), actual.get(i).getAge());
+            assertArrayEquals(expected.get(i).getInterestingDateMillis(), actual.get(i).getInterestingDateMillis());
+        }
+    }
+}
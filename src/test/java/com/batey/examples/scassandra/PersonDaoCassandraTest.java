@@ -15,9 +15,16 @@
  */
 package com.batey.examples.scassandra;
 
+import com.codahale.metrics.Gauge;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 import org.scassandra.cql.PrimitiveType;
 import org.scassandra.http.client.*;
 import org.scassandra.http.client.PrimingRequest.Result;
@@ -25,6 +32,10 @@ import org.scassandra.http.client.types.ColumnMetadata;
 import org.scassandra.junit.ScassandraServerRule;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
@@ -46,6 +57,9 @@ public class PersonDaoCassandraTest {
     @Rule
     public final ScassandraServerRule resetScassandra = SCASSANDRA;
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     public static final int CONFIGURED_RETRIES = 1;
 
     private static final PrimingClient primingClient = SCASSANDRA.primingClient();
@@ -68,6 +82,7 @@ public class PersonDaoCassandraTest {
     @Test
     public void shouldConnectToCassandraWhenConnectCalled() {
         //given
+        underTest.disconnect();
         activityClient.clearConnections();
         //when
         underTest.connect();
@@ -76,14 +91,152 @@ public class PersonDaoCassandraTest {
                 activityClient.retrieveConnections().size() > 0);
     }
 
+    @Test
+    public void testRepeatedConnectReusesTheOpenSession() {
+        //given
+        activityClient.clearConnections();
+        //when
+        underTest.connect();
+        //then
+        assertEquals(0, activityClient.retrieveConnections().size());
+    }
+
+    @Test
+    public void testReconnectOpensNewConnections() {
+        //given
+        activityClient.clearConnections();
+        //when
+        underTest.reconnect();
+        //then
+        assertTrue("Expected a new connection to Cassandra on reconnect",
+                activityClient.retrieveConnections().size() > 0);
+    }
+
+    @Test
+    public void testReconnectWritesWhatWriteBehindHasAccepted() {
+        //given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setWriteBehindCapacity(10);
+        underTest.setWriteBehindFlushMillis(TimeUnit.MINUTES.toMillis(1));
+        underTest.connect();
+        underTest.storePerson(new Person("Christopher", 29, Collections.emptyList()));
+        //when
+        underTest.reconnect();
+        //then
+        assertEquals(1, activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().startsWith("insert into person"))
+                .count());
+    }
+
+    @Test
+    public void testPoolGaugesReflectTheConfiguredConnections() {
+        //given
+        underTest.setCoreConnectionsPerHost(3);
+        underTest.setMaxConnectionsPerHost(6);
+        //when
+        underTest.reconnect();
+        //then
+        Map<String, Gauge> gauges = underTest.getMetricRegistry().getGauges();
+        assertEquals(3, gauges.get("person-dao.pool.open-connections").getValue());
+        assertEquals(0, gauges.get("person-dao.pool.in-flight").getValue());
+        assertEquals(0.0, (Double) gauges.get("person-dao.pool.utilization").getValue(), 0.0);
+    }
+
+    @Test
+    public void testWarmUpRunsSyntheticLookups() {
+        //given
+        underTest.setWarmUpLookups(10);
+        underTest.setWarmUpPoolTimeoutMillis(100);
+        //when
+        underTest.warmUp();
+        //then
+        assertTrue(underTest.isWarm());
+        long lookups = activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().equals("select * from person where name = ?"))
+                .count();
+        assertEquals(10, lookups);
+    }
+
+    @Test
+    public void testConnectReportsPhaseTimings() {
+        //given
+        underTest.setDeferNonCriticalStatements(true);
+        //when
+        underTest.connect();
+        //then
+        assertEquals(Arrays.asList("cluster", "prepare", "total"), new ArrayList<>(underTest.getConnectTimings().keySet()));
+    }
+
+    @Test(expected = NoHostAvailableException.class)
+    public void testHostsOutsideTheLocalDataCenterAreNotUsedByDefault() {
+        //given
+        underTest.setLocalDataCenter("other-dc");
+        //when
+        underTest.reconnect();
+        //then the statements can't be prepared on any host
+    }
+
+    @Test
+    public void testHostsOutsideTheLocalDataCenterAreUsedWhenAllowed() {
+        //given
+        underTest.setLocalDataCenter("other-dc");
+        underTest.setUsedHostsPerRemoteDc(1);
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person where name = ?")
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT))
+                .withRows(ImmutableMap.of("name", "Chris Batey", "age", 29))
+                .build());
+        //when
+        underTest.reconnect();
+        List<Person> people = underTest.retrievePeopleByName("Chris Batey");
+        //then
+        assertEquals(1, people.size());
+    }
+
+    @Test
+    public void testSpeculativeLookupsFollowTheConfiguredDelayOrPercentile() {
+        //given
+        assertSame(NoSpeculativeExecutionPolicy.INSTANCE, underTest.speculativeExecutionPolicy());
+        //when
+        underTest.setSpeculativeReadDelayMillis(20);
+        //then
+        assertTrue(underTest.speculativeExecutionPolicy() instanceof ConstantSpeculativeExecutionPolicy);
+        //when
+        underTest.setSpeculativeReadPercentile(99);
+        //then
+        assertTrue(underTest.speculativeExecutionPolicy() instanceof PercentileSpeculativeExecutionPolicy);
+    }
+
+    @Test
+    public void testSpeculativeLookupsStillReturnThePeople() {
+        //given
+        underTest.setSpeculativeReadDelayMillis(1);
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person where name = ?")
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT))
+                .withRows(ImmutableMap.of("name", "Chris Batey", "age", 29))
+                .withFixedDelay(50)
+                .build());
+        //when
+        underTest.reconnect();
+        List<Person> people = underTest.retrievePeopleByName("Chris Batey");
+        //then
+        assertEquals(1, people.size());
+    }
+
     @Test
     public void testRetrievingOfNames() throws Exception {
         // given
         Map<String, ?> row = ImmutableMap.of(
-                "first_name", "Chris",
+                "name", "Chris",
                 "last_name", "Batey",
                 "age", 29);
-        primingClient.prime(PrimingRequest.queryBuilder()
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
                 .withQuery("select * from person")
                 .withColumnTypes(column("age", PrimitiveType.INT))
                 .withRows(row)
@@ -97,10 +250,89 @@ public class PersonDaoCassandraTest {
         assertEquals("Chris", names.get(0).getName());
     }
 
+    @Test
+    public void testStreamingOfNames() throws Exception {
+        // given
+        Map<String, ?> chris = ImmutableMap.of("name", "Chris", "age", 29);
+        Map<String, ?> ana = ImmutableMap.of("name", "Ana", "age", 31);
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person")
+                .withColumnTypes(column("age", PrimitiveType.INT))
+                .withRows(chris, ana)
+                .build());
+
+        //when
+        List<String> names = underTest.streamPeople(1).map(Person::getName).collect(Collectors.toList());
+
+        //then
+        assertEquals(Arrays.asList("Chris", "Ana"), names);
+    }
+
+    @Test
+    public void testFullScansReadTheSameNameColumn() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person")
+                .withColumnTypes(column("age", PrimitiveType.INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(ImmutableMap.of("name", "Chris", "age", 29,
+                        "interesting_dates", Collections.singletonList(1420070400000L)))
+                .build());
+
+        //when
+        List<Person> summaries = underTest.retrievePeople();
+        List<Person> streamed = underTest.streamPeople(10).collect(Collectors.toList());
+        List<Person> withDates = underTest.streamPeopleWithDates(10).collect(Collectors.toList());
+
+        //then
+        assertEquals("Chris", summaries.get(0).getName());
+        assertEquals("Chris", streamed.get(0).getName());
+        assertEquals("Chris", withDates.get(0).getName());
+        assertEquals(Collections.singletonList(new Date(1420070400000L)), withDates.get(0).getInterestingDates());
+    }
+
+    @Test
+    public void testParallelScanMergesEveryRange() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern("select \\* from person.*")
+                .withColumnTypes(column("age", PrimitiveType.INT))
+                .withRows(ImmutableMap.of("name", "Chris", "age", 29))
+                .build());
+        underTest.setScanSplits(4);
+        underTest.connect();
+        activityClient.clearAllRecordedActivity();
+
+        //when
+        List<Person> people = underTest.retrievePeople();
+
+        //then
+        long rangeQueries = activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().equals("select * from person where token(name) > ? and token(name) <= ?"))
+                .count();
+        assertTrue("Expected the scan to be split, found " + rangeQueries + " range queries", rangeQueries >= 4);
+        assertEquals(rangeQueries, people.size());
+    }
+
+    @Test(expected = DriverException.class)
+    public void testParallelScanRethrowsDriverExceptions() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern("select \\* from person.*")
+                .withResult(Result.unavailable)
+                .build());
+        underTest.setScanSplits(4);
+        underTest.connect();
+
+        //when
+        underTest.retrievePeople();
+
+        //then
+    }
+
     @Test(expected = UnableToRetrievePeopleException.class)
     public void testHandlingOfReadRequestTimeout() throws Exception {
         // given
-        PrimingRequest primeReadRequestTimeout = PrimingRequest.queryBuilder()
+        PrimingRequest primeReadRequestTimeout = PrimingRequest.preparedStatementBuilder()
                 .withQuery("select * from person")
                 .withResult(Result.read_request_timeout)
                 .build();
@@ -115,6 +347,7 @@ public class PersonDaoCassandraTest {
     @Test
     public void testCorrectQueryIssuedOnConnect() {
         //given
+        underTest.disconnect();
         Query expectedQuery = Query.builder().withQuery("USE people").withConsistency("ONE").build();
 
         //when
@@ -128,6 +361,7 @@ public class PersonDaoCassandraTest {
     @Test
     public void testCorrectQueryIssuedOnConnectUsingMatcher() {
         //given
+        underTest.disconnect();
         Query expectedQuery = Query.builder().withQuery("USE people").withConsistency("ONE").build();
 
         //when
@@ -140,13 +374,14 @@ public class PersonDaoCassandraTest {
     @Test
     public void testQueryIssuedWithCorrectConsistency() {
         //given
-        Query expectedQuery = Query.builder().withQuery("select * from person").withConsistency("QUORUM").build();
+        PreparedStatementExecution expectedQuery = PreparedStatementExecution.builder()
+                .withPreparedStatementText("select * from person").withConsistency("QUORUM").build();
 
         //when
         underTest.retrievePeople();
 
          //then
-        List<Query> queries = activityClient.retrieveQueries();
+        List<PreparedStatementExecution> queries = activityClient.retrievePreparedStatementExecutions();
         assertTrue("Expected query with consistency QUORUM, found following queries: " + queries,
                 queries.contains(expectedQuery));
     }
@@ -154,15 +389,15 @@ public class PersonDaoCassandraTest {
     @Test
     public void testQueryIssuedWithCorrectConsistencyUsingMatcher() {
         //given
-        Query expectedQuery = Query.builder()
-                .withQuery("select * from person")
+        PreparedStatementExecution expectedQuery = PreparedStatementExecution.builder()
+                .withPreparedStatementText("select * from person")
                 .withConsistency("QUORUM").build();
 
         //when
         underTest.retrievePeople();
 
         //then
-        assertThat(activityClient.retrieveQueries(), containsQuery(expectedQuery));
+        assertThat(activityClient.retrievePreparedStatementExecutions(), preparedStatementRecorded(expectedQuery));
     }
 
     @Test
@@ -189,6 +424,217 @@ public class PersonDaoCassandraTest {
         assertThat(activityClient.retrievePreparedStatementExecutions(), preparedStatementRecorded(expectedPreparedStatement));
     }
 
+    @Test
+    public void testWriteBehindStoresOnFlush() {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setWriteBehindCapacity(10);
+        underTest.setWriteBehindFlushMillis(1000);
+        underTest.connect();
+        Date interestingDate = new Date();
+
+        //when
+        underTest.storePerson(new Person("Christopher", 29, Arrays.asList(interestingDate)));
+        underTest.flush();
+
+        //then
+        PreparedStatementExecution expectedPreparedStatement = PreparedStatementExecution.builder()
+                .withPreparedStatementText("insert into person(name, age, interesting_dates) values (?,?,?)")
+                .withConsistency("ONE")
+                .withVariables("Christopher", 29, Arrays.asList(interestingDate))
+                .build();
+        assertThat(activityClient.retrievePreparedStatementExecutions(), preparedStatementRecorded(expectedPreparedStatement));
+    }
+
+    @Test
+    public void testWriteBehindWritesOnlyTheLatestPersonPerName() {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setWriteBehindCapacity(10);
+        underTest.setWriteBehindFlushMillis(1000);
+        underTest.connect();
+        Date interestingDate = new Date();
+
+        //when
+        underTest.storePerson(new Person("Christopher", 30, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Christopher", 29, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Ana", 31, Arrays.asList(interestingDate)));
+        underTest.flush();
+
+        //then
+        List<PreparedStatementExecution> inserts = activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().startsWith("insert into person"))
+                .collect(Collectors.toList());
+        assertEquals(2, inserts.size());
+        PreparedStatementExecution expectedPreparedStatement = PreparedStatementExecution.builder()
+                .withPreparedStatementText("insert into person(name, age, interesting_dates) values (?,?,?)")
+                .withConsistency("ONE")
+                .withVariables("Christopher", 29, Arrays.asList(interestingDate))
+                .build();
+        assertThat(inserts, preparedStatementRecorded(expectedPreparedStatement));
+    }
+
+    @Test
+    public void testCoalescedStoresWriteOnlyTheLatestPerson() {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setWriteCoalescingMillis(1000);
+        underTest.connect();
+        Date interestingDate = new Date();
+
+        //when
+        underTest.storePerson(new Person("Christopher", 29, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Christopher", 30, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Christopher", 31, Arrays.asList(interestingDate)));
+        underTest.flush();
+
+        //then
+        List<PreparedStatementExecution> inserts = activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().startsWith("insert into person"))
+                .collect(Collectors.toList());
+        assertEquals(1, inserts.size());
+        PreparedStatementExecution expectedPreparedStatement = PreparedStatementExecution.builder()
+                .withPreparedStatementText("insert into person(name, age, interesting_dates) values (?,?,?)")
+                .withConsistency("ONE")
+                .withVariables("Christopher", 31, Arrays.asList(interestingDate))
+                .build();
+        assertThat(inserts, preparedStatementRecorded(expectedPreparedStatement));
+    }
+
+    @Test
+    public void testJournalledStoresCoalesceAsTheyAreReplayed() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setJournalDirectory(folder.newFolder());
+        underTest.setWriteCoalescingMillis(200);
+        underTest.connect();
+        Date interestingDate = new Date();
+
+        //when
+        underTest.storePerson(new Person("Christopher", 29, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Christopher", 30, Arrays.asList(interestingDate)));
+        underTest.storePerson(new Person("Christopher", 31, Arrays.asList(interestingDate)));
+        underTest.flush();
+
+        //then
+        List<PreparedStatementExecution> inserts = activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().startsWith("insert into person"))
+                .collect(Collectors.toList());
+        assertEquals(1, inserts.size());
+        PreparedStatementExecution expectedPreparedStatement = PreparedStatementExecution.builder()
+                .withPreparedStatementText("insert into person(name, age, interesting_dates) values (?,?,?)")
+                .withConsistency("ONE")
+                .withVariables("Christopher", 31, Arrays.asList(interestingDate))
+                .build();
+        assertThat(inserts, preparedStatementRecorded(expectedPreparedStatement));
+    }
+
+    @Test
+    public void testJournalDeadLettersABatchAfterTheMaxReplayAttempts() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern("insert into person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .withResult(Result.write_request_timeout)
+                .build());
+        underTest.setJournalDirectory(folder.newFolder());
+        underTest.setJournalRetryMillis(10);
+        underTest.setJournalMaxReplayAttempts(2);
+        underTest.connect();
+        Gauge<?> deadLettered = underTest.getMetricRegistry().getGauges().get("person-dao.journal.dead-lettered");
+
+        //when
+        underTest.storePerson(new Person("Christopher", 29, Collections.emptyList()));
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(1).equals(deadLettered.getValue()) && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+
+        //then
+        assertEquals(1L, deadLettered.getValue());
+        assertEquals(0L, underTest.getMetricRegistry().getGauges().get("person-dao.journal.backlog-bytes").getValue());
+        assertEquals(2, activityClient.retrievePreparedStatementExecutions().stream()
+                .filter(execution -> execution.getPreparedStatementText().startsWith("insert into person"))
+                .count());
+    }
+
+    @Test(expected = UnableToSavePersonException.class)
+    public void testJournalRejectsStoresOnceTheBacklogIsFull() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern("insert into person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .withResult(Result.write_request_timeout)
+                .build());
+        underTest.setJournalDirectory(folder.newFolder());
+        underTest.setJournalMaxBacklogBytes(1);
+        underTest.connect();
+        underTest.storePerson(new Person("Christopher", 29, Collections.emptyList()));
+
+        //when
+        underTest.storePerson(new Person("Ana", 31, Collections.emptyList()));
+
+        //then
+    }
+
+    @Test
+    public void testStorePeople() {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .build());
+        underTest.setMaxInFlightWrites(2);
+        underTest.connect();
+        List<Person> people = Arrays.asList(
+                new Person("Chris", 29, Collections.emptyList()),
+                new Person("Ana", 31, Collections.emptyList()),
+                new Person("Tom", 40, Collections.emptyList()));
+
+        //when
+        List<StoreFailure> failures = underTest.storePeople(people);
+
+        //then
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(3, activityClient.retrievePreparedStatementExecutions().size());
+    }
+
+    @Test
+    public void testStorePeopleWaitsForTheConcurrencyLimit() {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern(".*person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .withFixedDelay(20)
+                .build());
+        underTest.setInitialConcurrencyLimit(2);
+        underTest.setMaxConcurrencyLimit(2);
+        underTest.connect();
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            people.add(new Person("person-" + i, i, Collections.emptyList()));
+        }
+
+        //when
+        List<StoreFailure> failures = underTest.storePeople(people);
+
+        //then
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(10, activityClient.retrievePreparedStatementExecutions().size());
+    }
+
     @Test
     public void testRetrievePeopleViaPreparedStatement() {
         // given
@@ -216,9 +662,96 @@ public class PersonDaoCassandraTest {
         assertEquals(Lists.newArrayList(today), names.get(0).getInterestingDates());
     }
 
+    @Test
+    public void testRetrievePeopleByNames() throws Exception {
+        // given
+        Map<String, ?> row = ImmutableMap.of(
+                "name", "Chris Batey",
+                "age", 29,
+                "interesting_dates", Lists.newArrayList());
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person where name = ?")
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(row)
+                .build());
+        underTest.setMaxInFlightLookups(2);
+
+        //when
+        Map<String, List<Person>> people = underTest.retrievePeopleByNames(Arrays.asList("Chris", "Ana", "Tom", "Chris"));
+
+        //then
+        assertEquals(Arrays.asList("Chris", "Ana", "Tom"), new ArrayList<>(people.keySet()));
+        assertEquals(3, activityClient.retrievePreparedStatementExecutions().size());
+    }
+
+    @Test
+    public void testRetrievePeopleByNameAsync() throws Exception {
+        // given
+        Map<String, ?> row = ImmutableMap.of(
+                "name", "Chris Batey",
+                "age", 29,
+                "interesting_dates", Lists.newArrayList());
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person where name = ?")
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(row)
+                .build());
+
+        //when
+        List<Person> names = underTest.async().retrievePeopleByName("Chris Batey").get(5, TimeUnit.SECONDS);
+
+        //then
+        assertEquals(1, names.size());
+        assertEquals("Chris Batey", names.get(0).getName());
+        assertEquals(29, names.get(0).getAge());
+    }
+
+    @Test
+    public void testRepeatedConnectKeepsCallbacksInFlight() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person where name = ?")
+                .withVariableTypes(VARCHAR)
+                .withColumnTypes(column("age", INT))
+                .withRows(ImmutableMap.of("name", "Chris Batey", "age", 29))
+                .withFixedDelay(200)
+                .build());
+        underTest.setCallbackThreads(2);
+        underTest.reconnect();
+        CompletableFuture<List<Person>> lookup = underTest.async().retrievePeopleByName("Chris Batey");
+
+        //when
+        underTest.connect();
+
+        //then
+        assertEquals(1, lookup.get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testAsyncStoreTranslatesSlowQueries() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQueryPattern("insert into person.*")
+                .withVariableTypes(VARCHAR, INT, list(TIMESTAMP))
+                .withFixedDelay(1000)
+                .build());
+        underTest.connect();
+
+        //when
+        try {
+            underTest.async().storePerson(new Person("Christopher", 29, Collections.emptyList())).get(5, TimeUnit.SECONDS);
+            fail("Expected store to fail");
+        } catch (ExecutionException e) {
+            //then
+            assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof UnableToSavePersonException);
+        }
+    }
+
     @Test
     public void testRetriesConfiguredNumberOfTimes() throws Exception {
-        PrimingRequest readTimeoutPrime = PrimingRequest.queryBuilder()
+        PrimingRequest readTimeoutPrime = PrimingRequest.preparedStatementBuilder()
                 .withQuery("select * from person")
                 .withResult(Result.read_request_timeout)
                 .build();
@@ -229,7 +762,7 @@ public class PersonDaoCassandraTest {
         } catch (UnableToRetrievePeopleException e) {
         }
 
-        assertEquals(CONFIGURED_RETRIES + 1, activityClient.retrieveQueries().size());
+        assertEquals(CONFIGURED_RETRIES + 1, activityClient.retrievePreparedStatementExecutions().size());
     }
 
     @Test(expected = UnableToSavePersonException.class)
@@ -246,9 +779,51 @@ public class PersonDaoCassandraTest {
         underTest.storePerson(new Person("Christopher", 29, Collections.emptyList()));
     }
 
+    @Test
+    public void testExpiredDeadlineFailsWithoutQuerying() throws Exception {
+        // given
+        Deadline expired = Deadline.after(0, TimeUnit.MILLISECONDS);
+
+        //when
+        try {
+            underTest.retrievePeopleByName("Chris Batey", expired);
+            fail("Expected lookup to fail");
+        } catch (UnableToRetrievePeopleException e) {
+            //then
+            assertEquals(0, activityClient.retrievePreparedStatementExecutions().size());
+        }
+    }
+
+    @Test
+    public void testDeadlineCutsRetriesShort() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person")
+                .withResult(Result.read_request_timeout)
+                .withFixedDelay(100)
+                .build());
+        PersonDaoCassandra retrying = new PersonDaoCassandra(8042, 5);
+        retrying.connect();
+        activityClient.clearAllRecordedActivity();
+
+        //when
+        try {
+            retrying.retrievePeople(Deadline.after(250, TimeUnit.MILLISECONDS));
+            fail("Expected the scan to run out of time");
+        } catch (UnableToRetrievePeopleException e) {
+            //then
+            Thread.sleep(300);
+            int attempts = activityClient.retrievePreparedStatementExecutions().size();
+            assertTrue("Expected the deadline to stop the retries, attempts were " + attempts,
+                    attempts >= 2 && attempts <= 3);
+        } finally {
+            retrying.disconnect();
+        }
+    }
+
     @Test
     public void testLowersConsistency() throws Exception {
-        PrimingRequest readtimeoutPrime = PrimingRequest.queryBuilder()
+        PrimingRequest readtimeoutPrime = PrimingRequest.preparedStatementBuilder()
                 .withQuery("select * from person")
                 .withResult(Result.read_request_timeout)
                 .build();
@@ -259,13 +834,13 @@ public class PersonDaoCassandraTest {
         } catch (UnableToRetrievePeopleException e) {
         }
 
-        List<Query> queries = activityClient.retrieveQueries();
+        List<PreparedStatementExecution> queries = activityClient.retrievePreparedStatementExecutions();
         assertEquals("Expected 2 attempts. Queries were: " + queries, 2, queries.size());
-        assertEquals(Query.builder()
-                .withQuery("select * from person")
+        assertEquals(PreparedStatementExecution.builder()
+                .withPreparedStatementText("select * from person")
                 .withConsistency("QUORUM").build(), queries.get(0));
-        assertEquals(Query.builder()
-                .withQuery("select * from person")
+        assertEquals(PreparedStatementExecution.builder()
+                .withPreparedStatementText("select * from person")
                 .withConsistency("ONE").build(), queries.get(1));
     }
 }
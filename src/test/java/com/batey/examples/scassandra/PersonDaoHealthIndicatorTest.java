@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PersonDaoHealthIndicatorTest {
+
+    private final PersonDaoCassandra dao = mock(PersonDaoCassandra.class);
+    private final PersonDaoHealthIndicator underTest = new PersonDaoHealthIndicator(dao);
+
+    @Test
+    public void outOfServiceUntilWarm() {
+        // given
+        when(dao.isWarm()).thenReturn(false);
+
+        //when
+        Status status = underTest.health().getStatus();
+
+        //then
+        assertEquals(Status.OUT_OF_SERVICE, status);
+    }
+
+    @Test
+    public void upOnceWarm() {
+        // given
+        when(dao.isWarm()).thenReturn(true);
+
+        //when
+        Status status = underTest.health().getStatus();
+
+        //then
+        assertEquals(Status.UP, status);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PersonFileLoaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Person> stored = Collections.synchronizedList(new ArrayList<>());
+    private PersonDao dao;
+
+    @Before
+    public void setup() {
+        dao = mock(PersonDao.class);
+        when(dao.storePeople(anyCollectionOf(Person.class))).thenAnswer(invocation -> {
+            stored.addAll((Collection<Person>) invocation.getArguments()[0]);
+            return Collections.emptyList();
+        });
+    }
+
+    @Test
+    public void testLoadsCsvAcrossSlices() throws Exception {
+        // given
+        StringBuilder csv = new StringBuilder("name,age,interesting_dates\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("person ").append(i).append(',').append(i).append(',').append(i).append('|').append(i + 1).append('\n');
+        }
+        File file = write("people.csv", csv.toString());
+
+        //when
+        PersonFileLoader.Result result = new PersonFileLoader(dao, 4, 7).load(file.toPath(), PersonFileLoader.Format.CSV);
+
+        //then
+        assertEquals(100, result.getPeople());
+        assertEquals(100, stored.size());
+        Person fortyTwo = byName("person 42");
+        assertEquals(42, fortyTwo.getAge());
+        assertArrayEquals(new long[]{42, 43}, fortyTwo.getInterestingDateMillis());
+    }
+
+    @Test
+    public void testLoadsJsonLines() throws Exception {
+        // given
+        File file = write("people.jsonl",
+                "{\"name\":\"Chris\",\"age\":29,\"interesting_dates\":[1420070400000]}\n"
+                        + "{\"name\":\"Ana\",\"age\":31,\"interesting_dates\":[]}");
+
+        //when
+        PersonFileLoader.Result result = new PersonFileLoader(dao, 2, 10).load(file.toPath(), PersonFileLoader.Format.JSON_LINES);
+
+        //then
+        assertEquals(2, result.getPeople());
+        assertArrayEquals(new long[]{1420070400000L}, byName("Chris").getInterestingDateMillis());
+        assertEquals(31, byName("Ana").getAge());
+    }
+
+    @Test
+    public void testCsvNamesMayContainCommas() {
+        Person person = PersonFileLoader.parseCsv("Batey, Chris,29,");
+
+        assertEquals("Batey, Chris", person.getName());
+        assertEquals(29, person.getAge());
+        assertEquals(0, person.getInterestingDateMillis().length);
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private Person byName(String name) {
+        synchronized (stored) {
+            for (Person person : stored) {
+                if (person.getName().equals(name)) {
+                    return person;
+                }
+            }
+        }
+        throw new AssertionError("No person called " + name + " was stored");
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PersonJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Person chris = Person.ofMillis("Chris", 29, new long[]{1420070400000L, 1422748800000L});
+    private final Person ana = Person.ofMillis("Ana", 31, null);
+    private final Person tom = Person.ofMillis("Tom", 40, new long[0]);
+
+    @Test
+    public void readsBackAppendedPeopleInOrder() throws Exception {
+        // given
+        PersonJournal underTest = new PersonJournal(folder.newFolder(), 4096, FsyncPolicy.EVERY_WRITE);
+        underTest.append(chris);
+        underTest.append(ana);
+        underTest.append(tom);
+
+        //when
+        PersonJournal.Batch batch = underTest.read(10);
+
+        //then
+        assertSamePeople(Arrays.asList(chris, ana, tom), batch.getPeople());
+        underTest.close();
+    }
+
+    @Test
+    public void readingDoesNotConsumeUntilCommitted() throws Exception {
+        // given
+        PersonJournal underTest = new PersonJournal(folder.newFolder(), 4096, FsyncPolicy.NEVER);
+        underTest.append(chris);
+        underTest.append(ana);
+        underTest.append(tom);
+
+        //when
+        PersonJournal.Batch first = underTest.read(2);
+        PersonJournal.Batch again = underTest.read(2);
+        underTest.commit(again.getEnd());
+        PersonJournal.Batch rest = underTest.read(2);
+
+        //then
+        assertSamePeople(Arrays.asList(chris, ana), first.getPeople());
+        assertSamePeople(Arrays.asList(chris, ana), again.getPeople());
+        assertSamePeople(Collections.singletonList(tom), rest.getPeople());
+        underTest.close();
+    }
+
+    @Test
+    public void rollsOverSegmentsAndDeletesCommittedOnes() throws Exception {
+        // given
+        File directory = folder.newFolder();
+        PersonJournal underTest = new PersonJournal(directory, 64, FsyncPolicy.NEVER);
+        for (int i = 0; i < 10; i++) {
+            underTest.append(Person.ofMillis("Person" + i, i, new long[]{i}));
+        }
+
+        //when
+        PersonJournal.Batch batch = underTest.read(100);
+        underTest.commit(batch.getEnd());
+
+        //then
+        assertEquals(10, batch.getPeople().size());
+        assertSamePeople(Collections.singletonList(Person.ofMillis("Person9", 9, new long[]{9})), batch.getPeople().subList(9, 10));
+        assertEquals(1, segmentFiles(directory).length);
+        assertEquals(0, underTest.getBacklogBytes());
+        underTest.close();
+    }
+
+    @Test
+    public void resumesAfterTheLastCommitWhenReopened() throws Exception {
+        // given
+        File directory = folder.newFolder();
+        PersonJournal before = new PersonJournal(directory, 4096, FsyncPolicy.INTERVAL);
+        before.append(chris);
+        before.commit(before.read(1).getEnd());
+        before.append(ana);
+        before.close();
+
+        //when
+        PersonJournal underTest = new PersonJournal(directory, 4096, FsyncPolicy.INTERVAL);
+        underTest.append(tom);
+        List<Person> replayed = underTest.read(10).getPeople();
+
+        //then
+        assertSamePeople(Arrays.asList(ana, tom), replayed);
+        underTest.close();
+    }
+
+    @Test
+    public void replaysNothingCommittedWhenReopenedRepeatedly() throws Exception {
+        // given
+        File directory = folder.newFolder();
+        PersonJournal first = new PersonJournal(directory, 64, FsyncPolicy.NEVER);
+        for (int i = 0; i < 5; i++) {
+            first.append(Person.ofMillis("Person" + i, i, new long[]{i}));
+        }
+        first.commit(first.read(100).getEnd());
+        first.close();
+        new PersonJournal(directory, 64, FsyncPolicy.NEVER).close();
+
+        //when
+        PersonJournal underTest = new PersonJournal(directory, 64, FsyncPolicy.NEVER);
+        List<Person> replayed = underTest.read(100).getPeople();
+
+        //then
+        assertEquals(Collections.emptyList(), replayed);
+        assertEquals(0, underTest.getBacklogBytes());
+        underTest.close();
+    }
+
+    @Test
+    public void replaysFromTheStartWithoutAValidCheckpoint() throws Exception {
+        // given
+        File directory = folder.newFolder();
+        PersonJournal before = new PersonJournal(directory, 4096, FsyncPolicy.EVERY_WRITE);
+        before.append(chris);
+        before.commit(before.read(1).getEnd());
+        before.append(ana);
+        before.close();
+        try (RandomAccessFile checkpoint = new RandomAccessFile(new File(directory, "checkpoint"), "rw")) {
+            checkpoint.seek(8);
+            checkpoint.write(0xff);
+        }
+
+        //when
+        PersonJournal underTest = new PersonJournal(directory, 4096, FsyncPolicy.EVERY_WRITE);
+        List<Person> replayed = underTest.read(10).getPeople();
+
+        //then
+        assertSamePeople(Arrays.asList(chris, ana), replayed);
+        underTest.close();
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws Exception {
+        // given
+        File directory = folder.newFolder();
+        PersonJournal before = new PersonJournal(directory, 4096, FsyncPolicy.EVERY_WRITE);
+        before.append(chris);
+        before.append(ana);
+        before.close();
+        try (RandomAccessFile segment = new RandomAccessFile(segmentFiles(directory)[0], "rw")) {
+            // corrupt a byte of Ana's name
+            int chrisRecord = 8 + 2 + 5 + 4 + 4 + 16;
+            segment.seek(chrisRecord + 8 + 2);
+            segment.write('X');
+        }
+
+        //when
+        PersonJournal underTest = new PersonJournal(directory, 4096, FsyncPolicy.EVERY_WRITE);
+        List<Person> replayed = underTest.read(10).getPeople();
+
+        //then
+        assertSamePeople(Collections.singletonList(chris), replayed);
+        underTest.close();
+    }
+
+    private static File[] segmentFiles(File directory) {
+        return directory.listFiles((dir, name) -> name.endsWith(".journal"));
+    }
+
+    private static void assertSamePeople(List<Person> expected, List<Person> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getAge(), actual.get(i).getAge());
+            assertArrayEquals(expected.get(i).getInterestingDateMillis(), actual.get(i).getInterestingDateMillis());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.scassandra.http.client.PrimingClient;
+import org.scassandra.http.client.PrimingRequest;
+import org.scassandra.junit.ScassandraServerRule;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.scassandra.cql.ListType.list;
+import static org.scassandra.cql.PrimitiveType.INT;
+import static org.scassandra.cql.PrimitiveType.TIMESTAMP;
+import static org.scassandra.http.client.types.ColumnMetadata.column;
+
+public class PersonTableExporterTest {
+
+    @ClassRule
+    public static final ScassandraServerRule SCASSANDRA = new ScassandraServerRule();
+
+    @Rule
+    public final ScassandraServerRule resetScassandra = SCASSANDRA;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final PrimingClient primingClient = SCASSANDRA.primingClient();
+
+    private PersonDaoCassandra dao;
+
+    @Before
+    public void setup() {
+        dao = new PersonDaoCassandra(8042, 1);
+        dao.connect();
+    }
+
+    @After
+    public void after() {
+        dao.disconnect();
+    }
+
+    @Test
+    public void testExportsEveryColumnOfTheTable() throws Exception {
+        // given
+        primingClient.prime(PrimingRequest.preparedStatementBuilder()
+                .withQuery("select * from person")
+                .withColumnTypes(column("age", INT), column("interesting_dates", list(TIMESTAMP)))
+                .withRows(
+                        ImmutableMap.of("name", "Chris", "age", 29,
+                                "interesting_dates", Arrays.asList(1420070400000L, 1422748800000L)),
+                        ImmutableMap.of("name", "Ana", "age", 31,
+                                "interesting_dates", Collections.emptyList()))
+                .build());
+        Path file = folder.newFile("export.pcol").toPath();
+
+        //when
+        long exported = new PersonTableExporter(dao, 1, 1000).export(file);
+
+        //then
+        assertEquals(2, exported);
+        assertSamePeople(Arrays.asList(
+                Person.ofMillis("Chris", 29, new long[]{1420070400000L, 1422748800000L}),
+                Person.ofMillis("Ana", 31, new long[0])), readAll(file));
+    }
+
+    private static List<Person> readAll(Path file) throws Exception {
+        List<Person> read = new ArrayList<>();
+        try (ColumnarPersonReader reader = new ColumnarPersonReader(file)) {
+            for (Person person = reader.read(); person != null; person = reader.read()) {
+                read.add(person);
+            }
+        }
+        return read;
+    }
+
+    private static void assertSamePeople(List<Person> expected, List<Person> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getAge(), actual.get(i).getAge());
+            assertArrayEquals(expected.get(i).getInterestingDateMillis(), actual.get(i).getInterestingDateMillis());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PersonTest {
+
+    @Test
+    public void keepsTheCallersListOfDates() throws Exception {
+        // given
+        List<Date> dates = new ArrayList<>(Arrays.asList(new Date(42)));
+
+        //when
+        Person underTest = new Person("Chris", 29, dates);
+
+        //then
+        assertSame(dates, underTest.getInterestingDates());
+        assertArrayEquals(new long[]{42}, underTest.getInterestingDateMillis());
+    }
+
+    @Test
+    public void acceptsNullDates() throws Exception {
+        //when
+        Person underTest = new Person("Chris", 29, null);
+
+        //then
+        assertNull(underTest.getInterestingDates());
+        assertNull(underTest.getInterestingDateMillis());
+    }
+
+    @Test
+    public void createsDatesFromMillisOnDemand() throws Exception {
+        //when
+        Person underTest = Person.ofMillis("Chris", 29, new long[]{42, 43});
+
+        //then
+        assertEquals(Arrays.asList(new Date(42), new Date(43)), underTest.getInterestingDates());
+        assertArrayEquals(new long[]{42, 43}, underTest.getInterestingDateMillis());
+    }
+}
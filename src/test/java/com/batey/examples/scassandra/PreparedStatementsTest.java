@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class PreparedStatementsTest {
+
+    private Session session;
+    private PreparedStatement statement;
+    private PreparedStatements underTest;
+
+    @Before
+    public void setup() {
+        session = mock(Session.class);
+        statement = mock(PreparedStatement.class);
+        when(session.prepareAsync(anyString())).thenReturn(Futures.immediateFuture(statement));
+        underTest = new PreparedStatements(session);
+    }
+
+    @Test
+    public void onlyPreparesQueriesNotPreparedYet() {
+        // given
+        underTest.prepare(PersonQuery.STORE, PersonQuery.RETRIEVE_BY_NAME);
+
+        //when
+        int prepared = underTest.prepare(PersonQuery.values());
+
+        //then
+        assertEquals(PersonQuery.values().length - 2, prepared);
+        verify(session, times(1)).prepareAsync(PersonQuery.STORE.cql());
+        verify(session, times(1)).prepareAsync(PersonQuery.RETRIEVE_ALL.cql());
+        assertSame(statement, underTest.get(PersonQuery.STORE));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import com.datastax.driver.core.ProtocolVersion;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TimestampListCodecTest {
+
+    private static final long FIRST = 1420070400000L;
+    private static final long SECOND = 1422748800000L;
+
+    @Test
+    public void testDecodesIntSizedCollections() {
+        // given
+        ByteBuffer bytes = ByteBuffer.allocate(4 + 2 * 12);
+        bytes.putInt(2).putInt(8).putLong(FIRST).putInt(8).putLong(SECOND).flip();
+
+        //when
+        long[] millis = TimestampListCodec.decode(bytes, ProtocolVersion.V3);
+
+        //then
+        assertArrayEquals(new long[]{FIRST, SECOND}, millis);
+    }
+
+    @Test
+    public void testDecodesShortSizedCollections() {
+        // given
+        ByteBuffer bytes = ByteBuffer.allocate(2 + 2 * 10);
+        bytes.putShort((short) 2).putShort((short) 8).putLong(FIRST).putShort((short) 8).putLong(SECOND).flip();
+
+        //when
+        long[] millis = TimestampListCodec.decode(bytes, ProtocolVersion.V2);
+
+        //then
+        assertArrayEquals(new long[]{FIRST, SECOND}, millis);
+    }
+
+    @Test
+    public void testNullColumnDecodesToNoDates() {
+        assertArrayEquals(new long[0], TimestampListCodec.decode(null, ProtocolVersion.V3));
+    }
+
+    @Test
+    public void testEncodesIntSizedCollections() {
+        // given
+        ByteBuffer expected = ByteBuffer.allocate(4 + 2 * 12);
+        expected.putInt(2).putInt(8).putLong(FIRST).putInt(8).putLong(SECOND).flip();
+
+        //when
+        ByteBuffer bytes = TimestampListCodec.encode(new long[]{FIRST, SECOND}, ProtocolVersion.V3);
+
+        //then
+        assertEquals(expected, bytes);
+        assertEquals(bytes.capacity(), bytes.remaining());
+    }
+
+    @Test
+    public void testEncodesShortSizedCollections() {
+        // given
+        ByteBuffer expected = ByteBuffer.allocate(2 + 2 * 10);
+        expected.putShort((short) 2).putShort((short) 8).putLong(FIRST).putShort((short) 8).putLong(SECOND).flip();
+
+        //when
+        ByteBuffer bytes = TimestampListCodec.encode(new long[]{FIRST, SECOND}, ProtocolVersion.V2);
+
+        //then
+        assertEquals(expected, bytes);
+    }
+
+    @Test
+    public void testEncodedDatesDecodeToTheSameMillis() {
+        long[] millis = {FIRST, SECOND, -1L};
+
+        assertArrayEquals(millis, TimestampListCodec.decode(TimestampListCodec.encode(millis, ProtocolVersion.V3), ProtocolVersion.V3));
+    }
+
+    @Test
+    public void testNoDatesEncodeToNullColumn() {
+        assertNull(TimestampListCodec.encode(null, ProtocolVersion.V3));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 Christopher Batey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.batey.examples.scassandra;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenRangeScannerTest {
+
+    @Test
+    public void mergesNeighboursIntoEvenlySizedGroups() throws Exception {
+        // given
+        List<Integer> ranges = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        //when
+        List<List<Integer>> groups = TokenRangeScanner.contiguousGroups(ranges, 4);
+
+        //then
+        assertEquals(Arrays.asList(
+                Arrays.asList(1, 2),
+                Arrays.asList(3, 4, 5),
+                Arrays.asList(6, 7),
+                Arrays.asList(8, 9, 10)), groups);
+    }
+
+    @Test
+    public void keepsEveryRangeWhenAsManyGroupsAsRanges() throws Exception {
+        // given
+        List<Integer> ranges = Arrays.asList(1, 2, 3);
+
+        //when
+        List<List<Integer>> groups = TokenRangeScanner.contiguousGroups(ranges, 3);
+
+        //then
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2), Arrays.asList(3)), groups);
+    }
+}